@@ -0,0 +1,240 @@
+package ch.mfrey.maven.plugin.copy;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of the hot paths of the {@link CopyMojo} on synthetic trees and files, run by the
+ * <code>benchmark</code> profile. The trees are created in the temporary directory once per trial, larger ones can be
+ * selected with the JMH parameters, e.g. <code>-p files=1000000 -p size=1GB</code>.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class CopyMojoBenchmark {
+
+    /**
+     * A source file of a given size and the replaces to apply to it.
+     */
+    @State(Scope.Benchmark)
+    public static class Content {
+
+        private ResourceContext context;
+
+        private File destFile;
+
+        private File directory;
+
+        private CopyMojo mojo;
+
+        /** none, literal, literals, regex or regexes */
+        @Param({ "none", "literal", "literals", "regex", "regexes" })
+        public String replaces;
+
+        @Param({ "1KB", "1MB", "64MB" })
+        public String size;
+
+        private File srcFile;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            directory = Files.createTempDirectory("copy-benchmark").toFile();
+            srcFile = new File(directory, "source.txt");
+            destFile = new File(directory, "dest.txt");
+            writeContent(srcFile, parseSize(size));
+            Resource resource = resource(directory).setReplaceExisting(true);
+            if (replaces.startsWith("literal")) {
+                resource.addReplace(Replace.asReplace("to be modified", "has been modified"));
+            } else if (replaces.startsWith("regex")) {
+                resource.addReplace(Replace.asRegex("ch\\.mfrey\\.(\\w+)", "org.example.$1"));
+            }
+            if (replaces.endsWith("s")) {
+                for (int i = 0; i < 10; i++) {
+                    resource.addReplace(replaces.startsWith("literal") ? Replace.asReplace("token" + i, "value" + i)
+                            : Replace.asRegex("token" + i + "[a-z]*", "value" + i));
+                }
+            }
+            mojo = new CopyMojo();
+            context = context(mojo, resource, directory);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            FileUtils.deleteDirectory(directory);
+        }
+    }
+
+    /**
+     * A tree of empty directories, created again before each cleanup.
+     */
+    @State(Scope.Benchmark)
+    public static class EmptyTree {
+
+        @Param({ "1000", "10000" })
+        public int directories;
+
+        private File directory;
+
+        private CopyMojo mojo;
+
+        @Setup(Level.Invocation)
+        public void setUp() throws IOException {
+            directory = Files.createTempDirectory("copy-benchmark").toFile();
+            for (int i = 0; i < directories; i++) {
+                FileUtils.forceMkdir(new File(directory, "d" + i / 100 + "/d" + i));
+            }
+            mojo = new CopyMojo();
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() throws IOException {
+            FileUtils.deleteDirectory(directory);
+        }
+    }
+
+    /**
+     * A tree of small files, a hundred per directory.
+     */
+    @State(Scope.Benchmark)
+    public static class Tree {
+
+        private ResourceContext context;
+
+        private File directory;
+
+        @Param({ "1000", "100000" })
+        public int files;
+
+        private List<File> found;
+
+        private CopyMojo mojo;
+
+        /** none, literal, literals, regex or regexes */
+        @Param({ "none", "literal", "literals", "regex", "regexes" })
+        public String paths;
+
+        private Resource resource;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            directory = Files.createTempDirectory("copy-benchmark").toFile();
+            for (int i = 0; i < files; i++) {
+                File file = new File(directory, "src/d" + i / 10000 + "/d" + i / 100 + "/file" + i + ".txt");
+                FileUtils.forceMkdir(file.getParentFile());
+                Files.write(file.toPath(), "some content to be modified\n".getBytes(StandardCharsets.UTF_8));
+            }
+            resource = resource(directory);
+            resource.addInclude("src/**/*.txt");
+            if (paths.startsWith("literal")) {
+                resource.addPath(Replace.asReplace("src", "target"));
+            } else if (paths.startsWith("regex")) {
+                resource.addPath(Replace.asRegex("file([0-9]+)", "copy$1"));
+            }
+            if (paths.endsWith("s")) {
+                for (int i = 0; i < 10; i++) {
+                    resource.addPath(paths.startsWith("literal") ? Replace.asReplace("d" + i + "0", "e" + i + "0")
+                            : Replace.asRegex("/d" + i + "([0-9]*)/", "/e" + i + "$1/"));
+                }
+            }
+            mojo = new CopyMojo();
+            found = mojo.getFiles(directory, resource);
+            context = context(mojo, resource, directory);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            FileUtils.deleteDirectory(directory);
+        }
+    }
+
+    private static ResourceContext context(final CopyMojo mojo, final Resource resource, final File directory)
+            throws Exception {
+        return new ResourceContext(resource, directory, mojo.createRewriter(resource), mojo.createReplacer(resource),
+                1, new ResourceMetrics(resource.getId(), 0));
+    }
+
+    /**
+     * @return the number of bytes of a size like <code>1KB</code>, <code>1MB</code> or <code>1GB</code>
+     */
+    static long parseSize(final String size) {
+        long value = Long.parseLong(size.substring(0, size.length() - 2));
+        switch (size.substring(size.length() - 2)) {
+        case "KB":
+            return value * 1024;
+        case "MB":
+            return value * 1024 * 1024;
+        case "GB":
+            return value * 1024 * 1024 * 1024;
+        default:
+            throw new IllegalArgumentException("Unknown size " + size);
+        }
+    }
+
+    private static Resource resource(final File directory) {
+        Resource resource = new Resource();
+        resource.setId("benchmark");
+        resource.setDirectory(directory.getAbsolutePath());
+        return resource;
+    }
+
+    /**
+     * Writes lines of text with some matches of every replace until the file has <code>bytes</code> bytes.
+     */
+    static void writeContent(final File file, final long bytes) throws IOException {
+        try (Writer out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            long written = 0;
+            for (int i = 0; written < bytes; i++) {
+                String line = i % 16 == 0 ? "line " + i + ": some content to be modified, ch.mfrey.old token"
+                        + i % 10 + "\n" : "line " + i + ": some other content without any of the literals\n";
+                int length = (int) Math.min(line.length(), bytes - written);
+                out.write(line, 0, length);
+                written += length;
+            }
+        }
+    }
+
+    @Benchmark
+    public void cleanupEmptyDirs(final EmptyTree tree) throws IOException {
+        tree.mojo.cleanupEmptyDirs(tree.directory);
+    }
+
+    @Benchmark
+    public boolean copyFile(final Content content) throws IOException {
+        return content.mojo.copyFile(content.context, content.srcFile, content.destFile);
+    }
+
+    @Benchmark
+    public List<File> getFiles(final Tree tree) throws Exception {
+        return tree.mojo.getFiles(tree.directory, tree.resource);
+    }
+
+    @Benchmark
+    public void getNewPath(final Tree tree, final Blackhole blackhole) {
+        for (File file : tree.found) {
+            blackhole.consume(tree.mojo.getNewPath(tree.context, file, new FileOperation(file)));
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package ch.mfrey.maven.plugin.copy;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Zip and jar archives used as the directory of a resource, like <code>jar:lib/sources.zip!/some/dir</code>, or as the
+ * archive the files are written into. The archives are read and written through the NIO zip file system.
+ */
+final class Archives {
+
+    private static final String ENTRY_SEPARATOR = "!/";
+
+    private static final String FILE_PREFIX = "file:";
+
+    private static final String PREFIX = "jar:";
+
+    /**
+     * @return the directory within the archive, <code>/</code> for its root
+     */
+    static String getEntryDir(final String directory) {
+        int separator = directory.indexOf(ENTRY_SEPARATOR);
+        return separator < 0 ? "/" : directory.substring(separator + 1);
+    }
+
+    /**
+     * @return the path of the archive, which may be relative, or the absolute path of a <code>file:</code> URI like
+     *         in <code>jar:file:/some/sources.zip!/dir</code>
+     */
+    static String getPath(final String directory) {
+        int separator = directory.indexOf(ENTRY_SEPARATOR);
+        String path = directory.substring(PREFIX.length(), separator < 0 ? directory.length() : separator);
+        return path.startsWith(FILE_PREFIX) ? Paths.get(URI.create(path)).toString() : path;
+    }
+
+    /**
+     * @return true if the directory of a resource points into an archive
+     */
+    static boolean isArchive(final String directory) {
+        return directory != null && directory.startsWith(PREFIX);
+    }
+
+    /**
+     * Opens the file system of an archive, creating the archive if <code>create</code> is set and it does not exist.
+     * Closing the file system writes the entries changed.
+     */
+    static FileSystem open(final File archive, final boolean create) throws IOException {
+        URI uri = URI.create(PREFIX + archive.getAbsoluteFile().toURI());
+        Map<String, String> env = create ? Collections.singletonMap("create", "true") : Collections
+                .<String, String> emptyMap();
+        return FileSystems.newFileSystem(uri, env);
+    }
+
+    private Archives() {
+    }
+}
@@ -0,0 +1,103 @@
+package ch.mfrey.maven.plugin.copy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Tells binary files, which are copied without applying the replaces. The <code>textIncludes</code> and
+ * <code>binaryIncludes</code> of the resource decide first, then well known binary extensions. Any other file is
+ * binary if its first block contains a NUL byte (for charsets where text never does) or is not valid in the charset.
+ */
+class BinaryDetector {
+
+    private static final Set<String> BINARY_EXTENSIONS = new HashSet<String>(Arrays.asList("7z", "avi", "bin", "bmp",
+            "bz2", "class", "der", "dll", "dylib", "ear", "eot", "exe", "flac", "gif", "gz", "ico", "jar", "jks",
+            "jpeg", "jpg", "mov", "mp3", "mp4", "ogg", "otf", "p12", "pdf", "png", "rar", "so", "tar", "tgz", "tif",
+            "tiff", "ttf", "war", "wav", "webp", "woff", "woff2", "xz", "zip"));
+
+    private static final int SNIFF_SIZE = ContentReplacer.BUFFER_SIZE;
+
+    private final List<PathPattern> binaryIncludes;
+
+    private final Charset charset;
+
+    private final boolean nulIsBinary;
+
+    private final List<PathPattern> textIncludes;
+
+    BinaryDetector(final List<String> binaryIncludes, final List<String> textIncludes, final Charset charset) {
+        this.binaryIncludes = PathPattern.parse(binaryIncludes);
+        this.textIncludes = PathPattern.parse(textIncludes);
+        this.charset = charset;
+        this.nulIsBinary = ByteReplacer.isAsciiSafe(charset);
+    }
+
+    private boolean hasExtension(final String relativePath) {
+        int dot = relativePath.lastIndexOf('.');
+        return dot > relativePath.lastIndexOf('/')
+                && BINARY_EXTENSIONS.contains(relativePath.substring(dot + 1).toLowerCase(Locale.ENGLISH));
+    }
+
+    /**
+     * @param relativePath
+     *            the path relative to the working directory, separated by <code>/</code>
+     */
+    boolean isBinary(final String relativePath, final Path file) throws IOException {
+        if (matches(textIncludes, relativePath)) {
+            return false;
+        }
+        if (matches(binaryIncludes, relativePath) || hasExtension(relativePath)) {
+            return true;
+        }
+        return sniff(file);
+    }
+
+    private boolean matches(final List<PathPattern> patterns, final String relativePath) {
+        for (PathPattern pattern : patterns) {
+            if (pattern.matches(relativePath)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the first block has a NUL byte or is not valid in the charset
+     */
+    private boolean sniff(final Path file) throws IOException {
+        byte[] block = new byte[SNIFF_SIZE];
+        int length = 0;
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while (length < block.length && (read = in.read(block, length, block.length - length)) != -1) {
+                length += read;
+            }
+        }
+        if (nulIsBinary) {
+            for (int i = 0; i < length; i++) {
+                if (block[i] == 0) {
+                    return true;
+                }
+            }
+        }
+        CharsetDecoder decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        // A sequence cut off at the end of the block is not an error unless the file ends there
+        CoderResult result = decoder.decode(ByteBuffer.wrap(block, 0, length), CharBuffer.allocate(length),
+                length < block.length);
+        return result.isError();
+    }
+}
@@ -0,0 +1,365 @@
+package ch.mfrey.maven.plugin.copy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Applies the literal replaces of a {@link ContentReplacer} to the encoded bytes, without decoding and encoding the
+ * content. This gives the same result as the character path if every <code>from</code> is ASCII and the charset
+ * encodes ASCII as single bytes which never occur inside the encoding of another character, like UTF-8 or the
+ * ISO-8859 charsets. Bytes which are not valid in the charset are kept as they are.
+ */
+public class ByteReplacer {
+
+    /**
+     * A growable array of bytes.
+     */
+    static class Bytes {
+
+        private byte[] data;
+
+        private int length;
+
+        Bytes(final int capacity) {
+            data = new byte[capacity];
+        }
+
+        void append(final byte[] bytes, final int off, final int len) {
+            ensureCapacity(length + len);
+            System.arraycopy(bytes, off, data, length, len);
+            length += len;
+        }
+
+        void append(final ByteBuffer buffer) {
+            ensureCapacity(length + buffer.remaining());
+            int len = buffer.remaining();
+            buffer.get(data, length, len);
+            length += len;
+        }
+
+        /**
+         * Drops the first <code>count</code> bytes.
+         */
+        void consume(final int count) {
+            System.arraycopy(data, count, data, 0, length - count);
+            length -= count;
+        }
+
+        private void ensureCapacity(final int capacity) {
+            if (capacity > data.length) {
+                data = Arrays.copyOf(data, Math.max(capacity, data.length * 2));
+            }
+        }
+    }
+
+    /**
+     * Receives the bytes of a step.
+     */
+    abstract static class Sink {
+
+        abstract void close() throws IOException;
+
+        abstract void write(byte[] bytes, int off, int len) throws IOException;
+    }
+
+    /**
+     * Writes to a channel through a reused direct buffer.
+     */
+    static class ChannelSink extends Sink {
+
+        private final ByteBuffer buffer;
+
+        private final WritableByteChannel channel;
+
+        ChannelSink(final WritableByteChannel channel, final ByteBuffer buffer) {
+            this.channel = channel;
+            this.buffer = buffer;
+            buffer.clear();
+        }
+
+        @Override
+        void close() throws IOException {
+            flush();
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        void write(final byte[] bytes, final int off, final int len) throws IOException {
+            int pos = off;
+            int end = off + len;
+            while (pos < end) {
+                int count = Math.min(buffer.remaining(), end - pos);
+                buffer.put(bytes, pos, count);
+                pos += count;
+                if (!buffer.hasRemaining()) {
+                    flush();
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces several literals in one pass, leftmost-first like the <code>MultiLiteralStep</code> of the
+     * {@link ContentReplacer}. A single literal behaves like {@link String#replace(CharSequence, CharSequence)}.
+     */
+    static class Step {
+
+        private final LiteralAutomaton automaton;
+
+        private final byte[][] to;
+
+        Step(final List<Replace> literals, final Charset charset) {
+            String[] from = new String[literals.size()];
+            to = new byte[literals.size()][];
+            for (int i = 0; i < from.length; i++) {
+                from[i] = literals.get(i).getFrom();
+                to[i] = literals.get(i).getTo().getBytes(charset);
+            }
+            // ASCII patterns, so the characters are the bytes
+            automaton = new LiteralAutomaton(from);
+        }
+
+        /**
+         * Replaces in the first <code>len</code> bytes of <code>pending</code> and appends the final bytes to
+         * <code>out</code>.
+         *
+         * @return the number of bytes consumed
+         */
+        int process(final byte[] pending, final int len, final boolean eof, final Bytes out) {
+            int pos = 0;
+            int state = 0;
+            int candidate = -1;
+            int candidateStart = 0;
+            int i = 0;
+            while (i < len || eof && candidate >= 0) {
+                if (i < len) {
+                    state = automaton.next(state, (char) (pending[i++] & 0xFF));
+                    int match = automaton.match(state);
+                    if (match >= 0) {
+                        int matchStart = i - automaton.pattern(match).length();
+                        if (candidate < 0 || matchStart < candidateStart
+                                || matchStart == candidateStart && match < candidate) {
+                            candidate = match;
+                            candidateStart = matchStart;
+                        }
+                    }
+                }
+                // Replace once no match in progress can start at or before the candidate
+                if (candidate >= 0 && (i >= len && eof || i - automaton.depth(state) > candidateStart)) {
+                    out.append(pending, pos, candidateStart - pos);
+                    out.append(to[candidate], 0, to[candidate].length);
+                    pos = candidateStart + automaton.pattern(candidate).length();
+                    i = pos;
+                    state = 0;
+                    candidate = -1;
+                }
+            }
+            int safe = eof ? len : Math.max(pos, candidate >= 0 ? candidateStart : len - automaton.depth(state));
+            out.append(pending, pos, safe - pos);
+            return safe;
+        }
+    }
+
+    /**
+     * Runs one {@link Step} on chunks and hands the result to the next sink of the chain.
+     */
+    static class StepSink extends Sink {
+
+        private final Sink next;
+
+        private final Bytes out = new Bytes(BUFFER_SIZE);
+
+        private final Bytes pending = new Bytes(BUFFER_SIZE);
+
+        private final Step step;
+
+        StepSink(final Step step, final Sink next) {
+            this.step = step;
+            this.next = next;
+        }
+
+        @Override
+        void close() throws IOException {
+            drain(true);
+            next.close();
+        }
+
+        private void drain(final boolean eof) throws IOException {
+            out.length = 0;
+            pending.consume(step.process(pending.data, pending.length, eof, out));
+            next.write(out.data, 0, out.length);
+        }
+
+        void write(final ByteBuffer buffer) throws IOException {
+            pending.append(buffer);
+            if (pending.length >= BUFFER_SIZE) {
+                drain(false);
+            }
+        }
+
+        @Override
+        void write(final byte[] bytes, final int off, final int len) throws IOException {
+            pending.append(bytes, off, len);
+            if (pending.length >= BUFFER_SIZE) {
+                drain(false);
+            }
+        }
+    }
+
+    static final int BUFFER_SIZE = 8 * ContentReplacer.BUFFER_SIZE;
+
+    /** Bytes of a file mapped at once. */
+    static final long MAP_WINDOW = 64L * 1024 * 1024;
+
+    private static final ThreadLocal<ByteBuffer> INPUT = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+    };
+
+    private static final ThreadLocal<ByteBuffer> OUTPUT = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+    };
+
+    /**
+     * @return true if ASCII characters are single bytes which never occur in the encoding of other characters
+     */
+    static boolean isAsciiSafe(final Charset charset) {
+        String name = charset.name();
+        return name.equals("UTF-8") || name.equals("US-ASCII") || name.startsWith("ISO-8859-")
+                || name.startsWith("windows-125");
+    }
+
+    private static boolean isAscii(final String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) >= 128) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return a byte replacer giving the same result as <code>replacer</code> for <code>charset</code>, null if
+     *         there are no replaces or they have to see characters
+     */
+    public static ByteReplacer of(final ContentReplacer replacer, final Charset charset) {
+        if (replacer.getSteps().isEmpty() || !isAsciiSafe(charset)) {
+            return null;
+        }
+        List<Step> steps = new ArrayList<Step>();
+        for (ContentReplacer.Step step : replacer.getSteps()) {
+            List<Replace> literals = step.getLiterals();
+            if (literals == null) {
+                return null;
+            }
+            for (Replace literal : literals) {
+                // An empty from is inserted between characters, not bytes
+                if (literal.getFrom().isEmpty() || !isAscii(literal.getFrom())) {
+                    return null;
+                }
+            }
+            steps.add(new Step(literals, charset));
+        }
+        return new ByteReplacer(replacer, steps);
+    }
+
+    private final ContentReplacer replacer;
+
+    private final List<Step> steps;
+
+    ByteReplacer(final ContentReplacer replacer, final List<Step> steps) {
+        this.replacer = replacer;
+        this.steps = steps;
+    }
+
+    private StepSink chain(final WritableByteChannel out) {
+        Sink next = new ChannelSink(out, OUTPUT.get());
+        for (int i = steps.size() - 1; i > 0; i--) {
+            next = new StepSink(steps.get(i), next);
+        }
+        return new StepSink(steps.get(0), next);
+    }
+
+    /**
+     * @return <code>content</code> with all replaces applied
+     */
+    public byte[] replace(final byte[] content) {
+        long start = System.nanoTime();
+        byte[] result = content;
+        int length = content.length;
+        for (Step step : steps) {
+            Bytes out = new Bytes(length + length / 8 + 16);
+            step.process(result, length, true, out);
+            result = out.data;
+            length = out.length;
+        }
+        replacer.addMatchNanos(System.nanoTime() - start);
+        return result.length == length ? result : Arrays.copyOf(result, length);
+    }
+
+    /**
+     * Copies <code>in</code> to <code>out</code> applying all replaces, through direct buffers reused by the thread.
+     * The channels are left open.
+     */
+    public void replace(final ReadableByteChannel in, final WritableByteChannel out) throws IOException {
+        long start = System.nanoTime();
+        try {
+            StepSink chain = chain(out);
+            ByteBuffer buffer = INPUT.get();
+            buffer.clear();
+            while (in.read(buffer) != -1) {
+                buffer.flip();
+                chain.write(buffer);
+                buffer.clear();
+            }
+            chain.close();
+        } finally {
+            replacer.addMatchNanos(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Copies <code>in</code> to <code>out</code> applying all replaces, reading the file through memory mapped windows
+     * of <code>MAP_WINDOW</code> bytes. Only the chunks in process are copied to the heap. The channels are left open.
+     */
+    public void replaceMapped(final FileChannel in, final WritableByteChannel out) throws IOException {
+        long start = System.nanoTime();
+        try {
+            StepSink chain = chain(out);
+            long size = in.size();
+            for (long position = 0; position < size; position += MAP_WINDOW) {
+                MappedByteBuffer window = in.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(MAP_WINDOW, size - position));
+                while (window.hasRemaining()) {
+                    ByteBuffer chunk = window.slice();
+                    chunk.limit(Math.min(chunk.remaining(), BUFFER_SIZE));
+                    window.position(window.position() + chunk.remaining());
+                    chain.write(chunk);
+                }
+            }
+            chain.close();
+        } finally {
+            replacer.addMatchNanos(System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package ch.mfrey.maven.plugin.copy;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256 checksums of files and configuration strings.
+ */
+final class Checksums {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+    }
+
+    static String of(final File file) throws IOException {
+        MessageDigest digest = newDigest();
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] buffer = new byte[ContentReplacer.BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    static String of(final String value) {
+        return toHex(newDigest().digest(value.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    static String toHex(final byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[bytes[i] >> 4 & 0xF];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+
+    private Checksums() {
+        super();
+    }
+}
@@ -0,0 +1,527 @@
+package ch.mfrey.maven.plugin.copy;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Applies the content {@link Replace}s of a {@link Resource} while streaming from a {@link Reader} to a
+ * {@link Writer}. Every replace becomes a step in a chain of writers; each step only keeps as many characters as it
+ * needs to recognise a match spanning two chunks, so memory use does not depend on the size of the file.
+ * <p>
+ * Literal replaces keep <code>from.length() - 1</code> characters of overlap and behave exactly like
+ * {@link String#replace(CharSequence, CharSequence)}. Regex replaces keep a window of <code>regexWindow</code>
+ * characters of look-ahead and look-behind; matches must fit into that window.
+ * <p>
+ * Instances are immutable apart from the timing counters and can be shared between files and threads.
+ */
+public class ContentReplacer {
+
+    /**
+     * Replaces the literal <code>from</code> like {@link String#replace(CharSequence, CharSequence)}.
+     */
+    static class LiteralStep extends Step {
+
+        private final String from;
+
+        private final String to;
+
+        LiteralStep(final String from, final String to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        int getHistory() {
+            return 0;
+        }
+
+        @Override
+        List<Replace> getLiterals() {
+            return Collections.singletonList(Replace.asReplace(from, to));
+        }
+
+        @Override
+        int process(final StringBuilder pending, final int start, final boolean eof, final StringBuilder out) {
+            int len = pending.length();
+            if (from.isEmpty()) {
+                // Same as String.replace: insert before every character and once at the very end
+                for (int i = start; i < len; i++) {
+                    out.append(to).append(pending.charAt(i));
+                }
+                if (eof) {
+                    out.append(to);
+                }
+                return len;
+            }
+            int pos = start;
+            int idx;
+            while ((idx = pending.indexOf(from, pos)) >= 0) {
+                out.append(pending, pos, idx).append(to);
+                pos = idx + from.length();
+            }
+            // The tail might be the beginning of a match continued in the next chunk
+            int safe = eof ? len : Math.max(pos, len - from.length() + 1);
+            out.append(pending, pos, safe);
+            return safe;
+        }
+    }
+
+    /**
+     * Replaces several literals in one pass using a {@link LiteralAutomaton}.
+     */
+    static class MultiLiteralStep extends Step {
+
+        private final LiteralAutomaton automaton;
+
+        private final List<Replace> replaces;
+
+        private final String[] to;
+
+        MultiLiteralStep(final List<Replace> replaces) {
+            this.replaces = replaces;
+            String[] from = new String[replaces.size()];
+            to = new String[replaces.size()];
+            for (int i = 0; i < from.length; i++) {
+                from[i] = replaces.get(i).getFrom();
+                to[i] = replaces.get(i).getTo();
+            }
+            automaton = new LiteralAutomaton(from);
+        }
+
+        @Override
+        int getHistory() {
+            return 0;
+        }
+
+        @Override
+        List<Replace> getLiterals() {
+            return replaces;
+        }
+
+        @Override
+        int process(final StringBuilder pending, final int start, final boolean eof, final StringBuilder out) {
+            int len = pending.length();
+            int pos = start;
+            int state = 0;
+            int candidate = -1;
+            int candidateStart = 0;
+            int i = start;
+            while (i < len || eof && candidate >= 0) {
+                if (i < len) {
+                    state = automaton.next(state, pending.charAt(i++));
+                    int match = automaton.match(state);
+                    if (match >= 0) {
+                        int matchStart = i - automaton.pattern(match).length();
+                        if (candidate < 0 || matchStart < candidateStart
+                                || matchStart == candidateStart && match < candidate) {
+                            candidate = match;
+                            candidateStart = matchStart;
+                        }
+                    }
+                }
+                // Replace once no match in progress can start at or before the candidate
+                if (candidate >= 0 && (i >= len && eof || i - automaton.depth(state) > candidateStart)) {
+                    out.append(pending, pos, candidateStart).append(to[candidate]);
+                    pos = candidateStart + automaton.pattern(candidate).length();
+                    i = pos;
+                    state = 0;
+                    candidate = -1;
+                }
+            }
+            int safe = eof ? len : Math.max(pos, candidate >= 0 ? candidateStart : len - automaton.depth(state));
+            out.append(pending, pos, safe);
+            return safe;
+        }
+    }
+
+    /**
+     * Replaces all matches of a compiled pattern like {@link Matcher#replaceAll(String)}. A pattern combined from
+     * several regex replaces has one replacement per alternative, chosen by the group of the alternative which matched.
+     */
+    static class RegexStep extends Step {
+
+        private final int[] groups;
+
+        private final Pattern pattern;
+
+        private final String[] to;
+
+        private final int window;
+
+        RegexStep(final Pattern pattern, final String to, final int window) {
+            this(pattern, new String[] { to }, null, window);
+        }
+
+        RegexStep(final Pattern pattern, final String[] to, final int[] groups, final int window) {
+            this.pattern = pattern;
+            this.to = to;
+            this.groups = groups;
+            this.window = window;
+        }
+
+        @Override
+        int getHistory() {
+            return window;
+        }
+
+        @Override
+        int process(final StringBuilder pending, final int start, final boolean eof, final StringBuilder out) {
+            int len = pending.length();
+            // Only matches starting before the limit are guaranteed to be complete
+            int limit = eof ? len : len - window;
+            if (limit <= start) {
+                return start;
+            }
+            Matcher matcher = pattern.matcher(pending);
+            matcher.region(start, len);
+            matcher.useTransparentBounds(true);
+            matcher.useAnchoringBounds(false);
+            StringBuffer sb = new StringBuffer();
+            int pos = start;
+            int appendPos = 0;
+            while (matcher.find()) {
+                if (!eof && matcher.start() >= limit) {
+                    break;
+                }
+                sb.setLength(0);
+                matcher.appendReplacement(sb, replacement(matcher));
+                // appendReplacement also copies the text since its last append, which starts at 0 after region()
+                out.append(pending, pos, matcher.start()).append(sb, matcher.start() - appendPos, sb.length());
+                pos = matcher.end();
+                appendPos = pos;
+            }
+            int safe = eof ? len : Math.max(pos, limit);
+            out.append(pending, pos, safe);
+            return safe;
+        }
+
+        private String replacement(final Matcher matcher) {
+            if (groups != null) {
+                for (int i = 0; i < groups.length; i++) {
+                    if (matcher.start(groups[i]) >= 0) {
+                        return to[i];
+                    }
+                }
+            }
+            return to[0];
+        }
+    }
+
+    /**
+     * One replace of the chain.
+     */
+    abstract static class Step {
+
+        /**
+         * @return the number of already processed characters to keep in front of the pending ones as context
+         */
+        abstract int getHistory();
+
+        /**
+         * @return the literals replaced by this step, null if it is not literal
+         */
+        List<Replace> getLiterals() {
+            return null;
+        }
+
+        /**
+         * Replaces in <code>pending</code> starting at <code>start</code> and appends the final text to
+         * <code>out</code>.
+         *
+         * @return the index up to which <code>pending</code> was consumed
+         */
+        abstract int process(StringBuilder pending, int start, boolean eof, StringBuilder out);
+    }
+
+    /**
+     * Writer running one {@link Step} and handing the result to the next writer of the chain.
+     */
+    static class StepWriter extends Writer {
+
+        private final Writer next;
+
+        private final StringBuilder out = new StringBuilder();
+
+        private final StringBuilder pending = new StringBuilder();
+
+        private char[] scratch = new char[BUFFER_SIZE];
+
+        private int start = 0;
+
+        private final Step step;
+
+        StepWriter(final Step step, final Writer next) {
+            this.step = step;
+            this.next = next;
+        }
+
+        @Override
+        public void close() throws IOException {
+            drain(true);
+            next.close();
+        }
+
+        private void drain(final boolean eof) throws IOException {
+            out.setLength(0);
+            int consumed = step.process(pending, start, eof, out);
+            int keep = Math.min(step.getHistory(), consumed);
+            pending.delete(0, consumed - keep);
+            start = keep;
+
+            int len = out.length();
+            if (len > scratch.length) {
+                scratch = new char[len];
+            }
+            out.getChars(0, len, scratch, 0);
+            next.write(scratch, 0, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            next.flush();
+        }
+
+        @Override
+        public void write(final char[] cbuf, final int off, final int len) throws IOException {
+            pending.append(cbuf, off, len);
+            if (pending.length() - start >= BUFFER_SIZE + step.getHistory()) {
+                drain(false);
+            }
+        }
+    }
+
+    private static final Pattern BACK_REFERENCE = Pattern.compile("\\\\(\\d|k<)");
+
+    static final int BUFFER_SIZE = 8192;
+
+    private static final Pattern NAMED_GROUP = Pattern.compile("\\(\\?<[a-zA-Z]");
+
+    private final long compileNanos;
+
+    private final AtomicLong matchNanos = new AtomicLong();
+
+    private final List<Step> steps = new ArrayList<Step>();
+
+    public ContentReplacer(final List<Replace> replaces, final int regexWindow) {
+        this(replaces, regexWindow, false);
+    }
+
+    /**
+     * Consecutive literal replaces are combined into one {@link MultiLiteralStep}. With sequential semantics only
+     * literals which cannot interact are combined, so the result is the same as applying them one after the other.
+     * With <code>simultaneous</code> semantics all consecutive literals are searched at once, the leftmost match wins
+     * and the replaced text is not searched again. Consecutive regexes are then combined into one alternation as well,
+     * unless they use back references or named groups.
+     */
+    public ContentReplacer(final List<Replace> replaces, final int regexWindow, final boolean simultaneous) {
+        long start = System.nanoTime();
+        List<Replace> literals = new ArrayList<Replace>();
+        List<Replace> regexes = new ArrayList<Replace>();
+        for (Replace replace : replaces) {
+            if (replace.isRegex() || replace.getFrom().isEmpty()
+                    || !simultaneous && !isIndependent(literals, replace)) {
+                addLiterals(literals);
+            }
+            if (!replace.isRegex() || !simultaneous || !isCombinable(regexes, replace)) {
+                addRegexes(regexes, regexWindow);
+            }
+            if (replace.isRegex()) {
+                regexes.add(replace);
+            } else if (replace.getFrom().isEmpty()) {
+                steps.add(new LiteralStep(replace.getFrom(), replace.getTo()));
+            } else {
+                literals.add(replace);
+            }
+        }
+        addLiterals(literals);
+        addRegexes(regexes, regexWindow);
+        compileNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Combines the regexes into one alternation <code>(a)|(b)</code>. The groups and group references of every
+     * alternative are shifted by the groups of the alternatives before it.
+     */
+    private void addRegexes(final List<Replace> regexes, final int regexWindow) {
+        if (regexes.size() == 1) {
+            steps.add(new RegexStep(Pattern.compile(regexes.get(0).getFrom()), regexes.get(0).getTo(), regexWindow));
+        } else if (regexes.size() > 1) {
+            StringBuilder combined = new StringBuilder();
+            String[] to = new String[regexes.size()];
+            int[] groups = new int[regexes.size()];
+            int group = 1;
+            for (int i = 0; i < regexes.size(); i++) {
+                Replace regex = regexes.get(i);
+                if (i > 0) {
+                    combined.append('|');
+                }
+                combined.append('(').append(regex.getFrom()).append(')');
+                groups[i] = group;
+                int groupCount = Pattern.compile(regex.getFrom()).matcher("").groupCount();
+                to[i] = shiftGroups(regex.getTo(), groupCount, group);
+                group += groupCount + 1;
+            }
+            steps.add(new RegexStep(Pattern.compile(combined.toString()), to, groups, regexWindow));
+        }
+        regexes.clear();
+    }
+
+    void addMatchNanos(final long nanos) {
+        matchNanos.addAndGet(nanos);
+    }
+
+    private void addLiterals(final List<Replace> literals) {
+        if (literals.size() == 1) {
+            steps.add(new LiteralStep(literals.get(0).getFrom(), literals.get(0).getTo()));
+        } else if (literals.size() > 1) {
+            steps.add(new MultiLiteralStep(new ArrayList<Replace>(literals)));
+        }
+        literals.clear();
+    }
+
+    public long getCompileNanos() {
+        return compileNanos;
+    }
+
+    public long getMatchNanos() {
+        return matchNanos.get();
+    }
+
+    List<Step> getSteps() {
+        return steps;
+    }
+
+    /**
+     * @return the number of passes over the content
+     */
+    public int getStepCount() {
+        return steps.size();
+    }
+
+    /**
+     * A regex can be part of an alternation if neither it nor the others use back references or named groups, which
+     * would have to be renumbered or could clash.
+     */
+    private boolean isCombinable(final List<Replace> regexes, final Replace replace) {
+        if (regexes.isEmpty()) {
+            return true;
+        }
+        for (Replace regex : regexes) {
+            if (!isSelfContained(regex.getFrom())) {
+                return false;
+            }
+        }
+        return isSelfContained(replace.getFrom());
+    }
+
+    /**
+     * A literal is independent of the earlier ones if it can neither overlap their matches nor match across their
+     * replacements.
+     */
+    private boolean isIndependent(final List<Replace> earlier, final Replace replace) {
+        for (Replace previous : earlier) {
+            if (previous.getTo().isEmpty() || overlaps(previous.getFrom(), replace.getFrom())
+                    || overlaps(previous.getTo(), replace.getFrom())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isSelfContained(final String regex) {
+        return !BACK_REFERENCE.matcher(regex).find() && !NAMED_GROUP.matcher(regex).find();
+    }
+
+    /**
+     * @return true if an occurrence of <code>a</code> and one of <code>b</code> can share a character
+     */
+    private boolean overlaps(final String a, final String b) {
+        if (a.contains(b) || b.contains(a)) {
+            return true;
+        }
+        for (int k = 1; k < Math.min(a.length(), b.length()); k++) {
+            if (a.endsWith(b.substring(0, k)) || b.endsWith(a.substring(0, k))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return <code>content</code> with all replaces applied
+     */
+    public String replace(final String content) {
+        long start = System.nanoTime();
+        String result = content;
+        StringBuilder out = new StringBuilder();
+        for (Step step : steps) {
+            out.setLength(0);
+            step.process(new StringBuilder(result), 0, true, out);
+            result = out.toString();
+        }
+        matchNanos.addAndGet(System.nanoTime() - start);
+        return result;
+    }
+
+    /**
+     * Copies <code>reader</code> to <code>writer</code> applying all replaces. Both are closed afterwards.
+     */
+    public void replace(final Reader reader, final Writer writer) throws IOException {
+        long start = System.nanoTime();
+        try (Reader in = reader; Writer out = wrap(writer)) {
+            char[] buffer = new char[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            matchNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Rewrites the group references <code>$n</code> of a replacement the same way {@link Matcher} parses them.
+     */
+    private String shiftGroups(final String to, final int groupCount, final int shift) {
+        StringBuilder sb = new StringBuilder();
+        int i = 0;
+        while (i < to.length()) {
+            char c = to.charAt(i++);
+            if (c == '\\' && i < to.length()) {
+                sb.append(c).append(to.charAt(i++));
+            } else if (c == '$' && i < to.length() && Character.isDigit(to.charAt(i))) {
+                int group = to.charAt(i++) - '0';
+                while (i < to.length() && Character.isDigit(to.charAt(i))
+                        && group * 10 + to.charAt(i) - '0' <= groupCount) {
+                    group = group * 10 + to.charAt(i++) - '0';
+                }
+                sb.append('$').append(group == 0 ? 0 : group + shift);
+                if (i < to.length() && Character.isDigit(to.charAt(i))) {
+                    // A digit following the reference must not become part of the shifted number
+                    sb.append('\\');
+                }
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return a writer applying all replaces before passing the content on to <code>writer</code>
+     */
+    public Writer wrap(final Writer writer) {
+        Writer chain = writer;
+        for (int i = steps.size() - 1; i >= 0; i--) {
+            chain = new StepWriter(steps.get(i), chain);
+        }
+        return chain;
+    }
+}
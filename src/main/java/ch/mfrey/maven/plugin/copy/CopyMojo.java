@@ -1,12 +1,49 @@
 package ch.mfrey.maven.plugin.copy;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.io.FileExistsException;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
@@ -19,22 +56,220 @@ import org.apache.maven.project.MavenProject;
 @Mojo(name = "copy", defaultPhase = LifecyclePhase.GENERATE_SOURCES, threadSafe = true)
 public class CopyMojo extends AbstractMojo {
 
+    /** Tells the builds of a long running Maven apart for the session cache. */
+    @Parameter(defaultValue = "${session.request.startTime}", readonly = true)
+    private Date buildStart;
+
     @Parameter(defaultValue = "${project.build.directory}", readonly = true)
     private String defaultDir;
 
+    /**
+     * Only computes what the run would do and writes it to the <code>planFile</code>, without writing any other file.
+     */
+    @Parameter(defaultValue = "false")
+    private boolean dryRun;
+
+    /**
+     * Skips the sources which did not change since the last build with the same resource configuration.
+     */
+    @Parameter(defaultValue = "false")
+    private boolean incremental;
+
+    /**
+     * Compares the content hash of sources whose modification time changed before copying them again.
+     */
+    @Parameter(defaultValue = "false")
+    private boolean incrementalHash;
+
+    @Parameter(defaultValue = "${project.build.directory}/copy-maven-plugin.manifest")
+    private File manifestFile;
+
+    /**
+     * A directory keeping the replaced content across builds, like <code>${user.home}/.m2/copy-plugin-cache</code>.
+     */
+    @Parameter
+    private File outputCache;
+
+    /**
+     * Bytes the <code>outputCache</code> may hold, the least recently used entries are deleted beyond.
+     */
+    @Parameter(defaultValue = "1073741824")
+    private long outputCacheSize = 1024L * 1024 * 1024;
+
+    /**
+     * Checks the destinations of all resources for conflicts before any file is written.
+     */
+    @Parameter(defaultValue = "false")
+    private boolean preflight;
+
+    /**
+     * The plan written by a dry run and read with <code>usePlan</code>.
+     */
+    @Parameter(defaultValue = "${project.build.directory}/copy-maven-plugin.plan")
+    private File planFile;
+
     @Component
     private MavenProject project;
 
+    /**
+     * Metrics of the run per resource, written as JSON or, for a file ending in <code>.csv</code>, as CSV.
+     */
+    @Parameter(defaultValue = "${project.build.directory}/copy-maven-plugin-report.json")
+    private File reportFile;
+
+    /**
+     * Number of the slowest files listed per resource in the JSON report.
+     */
+    @Parameter(defaultValue = "10")
+    private int reportSlowest = 10;
+
     @Parameter
     private Resource[] resources;
 
+    /** The session cache of the current execution, null without one. */
+    private SessionCache sessionCache;
+
+    /**
+     * Bytes of directory listings and replaced content kept for all executions of the build, 0 disables the cache.
+     */
+    @Parameter(defaultValue = "0")
+    private long sessionCacheSize;
+
     @Parameter(defaultValue = "false")
     private boolean showfiles;
 
     @Parameter(defaultValue = "false", required = false)
     private boolean skip;
 
-    private void cleanupEmptyDirs(final File directory) throws IOException {
+    /**
+     * Number of files copied in parallel, can be overridden per resource.
+     */
+    @Parameter(defaultValue = "1")
+    private int threads = 1;
+
+    /**
+     * Takes the sources and destinations of the resources whose configuration did not change from the
+     * <code>planFile</code> instead of scanning and rewriting the paths.
+     */
+    @Parameter(defaultValue = "false")
+    private boolean usePlan;
+
+    /**
+     * Hands the sources of the plan to the resource instead of scanning, with their planned destinations. Sources gone
+     * since the plan was written are left out.
+     */
+    private void applyPlan(final ResourceContext context, final CopyPlan.Section section) throws IOException {
+        if (section == null) {
+            getLog().info("No plan for the current configuration, scanning");
+            return;
+        }
+        List<ResourceContext.FoundFile> found = new ArrayList<ResourceContext.FoundFile>();
+        Map<String, String> planned = new HashMap<String, String>();
+        for (CopyPlan.Entry entry : section.getEntries()) {
+            Path file = Paths.get(entry.getSrcPath());
+            if (!Files.isRegularFile(file)) {
+                getLog().debug("Planned source is gone: " + file);
+                continue;
+            }
+            context.getMetrics().addMatched();
+            found.add(new ResourceContext.FoundFile(file, context.relativize(file.toFile()), Files.readAttributes(
+                    file, BasicFileAttributes.class)));
+            planned.put(entry.getSrcPath(), entry.getDestPath());
+        }
+        context.setFound(found);
+        context.setPlanned(planned);
+    }
+
+    /**
+     * Copies the files of a resource reading them from an archive, writing them into an archive or both, through the
+     * NIO zip file system. Every file is streamed through the replaces, nothing is extracted on the way.
+     */
+    private void copyArchive(final ResourceContext context) throws IOException {
+        final Resource resource = context.getResource();
+        String directory = resource.getDirectory();
+        boolean fromArchive = Archives.isArchive(directory);
+        if (fromArchive && resource.isMove()) {
+            throw new IOException("Files can not be moved out of the archive " + directory);
+        }
+        try (FileSystem source = fromArchive ? Archives.open(resolve(Archives.getPath(directory)), false) : null;
+                FileSystem target = resource.getArchive() != null ? Archives.open(
+                        resolve(resource.getArchive()), true) : null) {
+            Path root = source != null ? source.getPath(Archives.getEntryDir(directory)) : context.getWorkingDir()
+                    .toPath();
+            context.getScanner().scan(root, new FileScanner.Listener() {
+                @Override
+                public void fileFound(final Path file, final String relativePath,
+                        final BasicFileAttributes attributes) throws IOException {
+                    context.getMetrics().addMatched();
+                    String newPath = rewriteEntry(context, relativePath);
+                    Path destPath = target != null ? target.getPath(newPath) : new File(context.getWorkingDir(),
+                            newPath).toPath();
+                    if (isShowfiles() && getLog().isInfoEnabled()) {
+                        StringBuilder sb = new StringBuilder();
+                        sb.append(resource.isMove() ? " mv " : " cp ").append(file.toUri())
+                                .append(System.lineSeparator());
+                        sb.append("        -> ").append(destPath.toUri());
+                        getLog().info(sb);
+                    }
+                    if (Files.exists(destPath) && !resource.isReplaceExisting()) {
+                        throw new FileExistsException("Destination '" + destPath.toUri() + "' already exists");
+                    }
+                    if (destPath.getParent() != null) {
+                        Files.createDirectories(destPath.getParent());
+                    }
+                    long start = System.nanoTime();
+                    copyEntry(context, file, relativePath, destPath);
+                    context.getMetrics().addFile(file.toString(), resource.isMove(), attributes.size(),
+                            Files.size(destPath), System.nanoTime() - start);
+                    if (resource.isMove()) {
+                        Files.delete(file);
+                        context.addEmptied(file.toFile().getParentFile());
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Streams a file from or to an archive, through the replaces unless it is binary.
+     */
+    private void copyEntry(final ResourceContext context, final Path srcPath, final String relativePath,
+            final Path destPath) throws IOException {
+        Resource resource = context.getResource();
+        try (InputStream in = Files.newInputStream(srcPath); OutputStream out = Files.newOutputStream(destPath)) {
+            if (resource.getReplaces().isEmpty() || context.getBinaryDetector().isBinary(relativePath, srcPath)) {
+                IOUtils.copy(in, out);
+            } else if (context.getByteReplacer() != null) {
+                context.getMetrics().addRewritten();
+                context.getByteReplacer().replace(Channels.newChannel(in), Channels.newChannel(out));
+            } else {
+                context.getMetrics().addRewritten();
+                Charset charset = Charset.forName(resource.getCharset());
+                context.getReplacer().replace(new InputStreamReader(in, charset), new OutputStreamWriter(out,
+                        charset));
+            }
+        }
+    }
+
+    /**
+     * Deletes the directories emptied by a move, walking up from each of them as long as the parent is empty as well.
+     */
+    private void cleanupEmptiedDirs(final ResourceContext context) throws IOException {
+        Path workingDir = context.getWorkingDir().getAbsoluteFile().toPath();
+        for (File emptied : context.getEmptied()) {
+            File directory = emptied.getAbsoluteFile();
+            while (directory != null && directory.toPath().startsWith(workingDir)) {
+                String[] names = directory.list();
+                if (names == null || names.length > 0) {
+                    break;
+                }
+                Files.delete(directory.toPath());
+                directory = directory.getParentFile();
+            }
+        }
+    }
+
+    void cleanupEmptyDirs(final File directory) throws IOException {
         if (directory.isDirectory()) {
             for (File file : directory.listFiles()) {
                 if (file.isDirectory()) {
@@ -47,49 +282,353 @@ public class CopyMojo extends AbstractMojo {
         }
     }
 
-    private void copyFile(final Resource resource, final File srcFile, final File destFile) throws IOException {
-        List<Replace> replaces = resource.getReplaces();
-        if (replaces.isEmpty()) {
+    /**
+     * @return false if the destination was left untouched because it already had the same content
+     */
+    boolean copyFile(final ResourceContext context, final File srcFile, final File destFile)
+            throws IOException {
+        return copyFile(context, srcFile, destFile, isPlainCopy(context, srcFile));
+    }
+
+    /**
+     * @param plainCopy
+     *            whether the file is copied like without replaces, as told by {@link #isPlainCopy}
+     * @return false if the destination was left untouched because it already had the same content
+     */
+    private boolean copyFile(final ResourceContext context, final File srcFile, final File destFile,
+            final boolean plainCopy) throws IOException {
+        Resource resource = context.getResource();
+        boolean written = true;
+        if (plainCopy) {
             if (srcFile.getAbsolutePath().equals(destFile.getAbsolutePath())) {
-                return;
+                return true;
+            } else if (isDelta(resource, srcFile, destFile)) {
+                written = copyDelta(context, srcFile, destFile);
             } else {
                 if (destFile.exists()) {
-                    if (resource.isReplaceExisting()) {
-                        destFile.delete();
-                    } else {
+                    if (!resource.isReplaceExisting()) {
                         throw new FileExistsException(destFile);
+                    } else if (resource.isSkipUnchanged() && FileUtils.contentEquals(srcFile, destFile)) {
+                        written = false;
+                    } else {
+                        destFile.delete();
                     }
                 }
-                if (resource.isMove()) {
-                    FileUtils.moveFile(srcFile, destFile);
+                if (!written) {
+                    if (resource.isMove()) {
+                        FileUtils.deleteQuietly(srcFile);
+                    }
+                } else if (resource.isMove()) {
+                    moveFile(srcFile, destFile);
                 } else {
-                    FileUtils.copyFile(srcFile, destFile);
+                    if (resource.getTransferStrategy() == TransferStrategy.COPY && isMapped(resource, srcFile)) {
+                        copyMapped(srcFile, destFile);
+                    } else {
+                        resource.getTransferStrategy().transfer(srcFile, destFile);
+                    }
                 }
             }
+        } else if (resource.isStreaming() || isMapped(resource, srcFile)) {
+            if (destFile.exists() && !resource.isReplaceExisting()) {
+                throw new FileExistsException(destFile);
+            }
+            context.getMetrics().addRewritten();
+            written = streamFile(context, srcFile, destFile);
+            if (resource.isMove() && !srcFile.getAbsolutePath().equals(destFile.getAbsolutePath())) {
+                FileUtils.deleteQuietly(srcFile);
+            }
         } else {
             // Read the file and replace its content
-            String content = FileUtils.readFileToString(srcFile, resource.getCharset());
-            for (Replace replace : replaces) {
-                if (replace.isRegex()) {
-                    content = content.replaceAll(replace.getFrom(), replace.getTo());
+            context.getMetrics().addRewritten();
+            SessionCache cache = context.getCache();
+            // The identity is taken before reading, so a change while reading is not cached as the old content
+            Object identity = cache != null ? SessionCache.identity(srcFile) : null;
+            // Shared with the other executions, the content is never changed
+            byte[] bytes = cache != null ? cache.getContent(srcFile, context.getCacheFingerprint(), identity) : null;
+            if (bytes == null) {
+                if (context.getByteReplacer() != null) {
+                    bytes = context.getByteReplacer().replace(FileUtils.readFileToByteArray(srcFile));
                 } else {
-                    content = content.replace(replace.getFrom(), replace.getTo());
+                    String content = context.getReplacer().replace(
+                            FileUtils.readFileToString(srcFile, resource.getCharset()));
+                    bytes = content.getBytes(resource.getCharset());
+                }
+                if (cache != null) {
+                    cache.putContent(srcFile, context.getCacheFingerprint(), identity, bytes);
                 }
             }
 
-            // Write the new file
-            if (destFile.exists()) {
-                if (resource.isReplaceExisting()) {
-                    destFile.delete();
-                } else {
-                    throw new FileExistsException(destFile);
+            // Write the new file next to the destination and rename it into place
+            if (destFile.exists() && !resource.isReplaceExisting()) {
+                throw new FileExistsException(destFile);
+            }
+            if (resource.isSkipUnchanged() && hasContent(destFile, bytes)) {
+                written = false;
+            } else if (isDelta(resource, srcFile, destFile)) {
+                DeltaWriter delta = new DeltaWriter(destFile.toPath());
+                try (DeltaWriter out = delta) {
+                    out.write(ByteBuffer.wrap(bytes));
+                }
+                written = finishDelta(context, delta);
+            } else {
+                File tmpFile = createTempFile(destFile);
+                try {
+                    FileUtils.writeByteArrayToFile(tmpFile, bytes);
+                    replaceWith(tmpFile, destFile);
+                } finally {
+                    FileUtils.deleteQuietly(tmpFile);
                 }
             }
-            FileUtils.writeStringToFile(destFile, content, resource.getCharset());
             if (resource.isMove() && !srcFile.getAbsolutePath().equals(destFile.getAbsolutePath())) {
                 FileUtils.deleteQuietly(srcFile);
             }
         }
+        return written;
+    }
+
+    /**
+     * Copies the replaced content of a file from its entry in the output cache, linking or cloning it with the
+     * <code>HARDLINK</code> and <code>REFLINK</code> strategies.
+     *
+     * @return false if the destination already had the content, null if there is no entry
+     */
+    private Boolean copyCached(final ResourceContext context, final File entry, final File srcFile,
+            final File destFile) throws IOException {
+        if (entry == null) {
+            return null;
+        }
+        Resource resource = context.getResource();
+        if (destFile.exists() && !resource.isReplaceExisting()) {
+            throw new FileExistsException(destFile);
+        }
+        boolean written = true;
+        try {
+            if (resource.isSkipUnchanged() && destFile.isFile() && FileUtils.contentEquals(entry, destFile)) {
+                written = false;
+            } else {
+                File tmpFile = createTempFile(destFile);
+                try {
+                    TransferStrategy strategy = resource.getTransferStrategy();
+                    if (strategy == TransferStrategy.HARDLINK || strategy == TransferStrategy.REFLINK) {
+                        FileUtils.deleteQuietly(tmpFile);
+                        strategy.transfer(entry, tmpFile);
+                    } else {
+                        Files.copy(entry.toPath(), tmpFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                    }
+                    replaceWith(tmpFile, destFile);
+                } finally {
+                    FileUtils.deleteQuietly(tmpFile);
+                }
+            }
+        } catch (NoSuchFileException | FileNotFoundException ex) {
+            // Evicted by another build meanwhile, also when a link strategy fell back to copying it
+            if (entry.isFile()) {
+                throw ex;
+            }
+            return null;
+        }
+        if (resource.isMove() && !srcFile.getAbsolutePath().equals(destFile.getAbsolutePath())) {
+            FileUtils.deleteQuietly(srcFile);
+        }
+        return written;
+    }
+
+    /**
+     * Copies a file over its existing destination, writing only the blocks which differ and keeping the modification
+     * time like the <code>COPY</code> strategy.
+     *
+     * @return false if no block differed
+     */
+    private boolean copyDelta(final ResourceContext context, final File srcFile, final File destFile)
+            throws IOException {
+        DeltaWriter delta = new DeltaWriter(destFile.toPath());
+        try (FileChannel in = FileChannel.open(srcFile.toPath(), StandardOpenOption.READ); DeltaWriter out = delta) {
+            long size = in.size();
+            for (long position = 0; position < size;) {
+                position += in.transferTo(position, size - position, out);
+            }
+        }
+        destFile.setLastModified(srcFile.lastModified());
+        return finishDelta(context, delta);
+    }
+
+    /**
+     * Copies through memory mapped windows of the source, so the content never passes the heap.
+     */
+    private void copyMapped(final File srcFile, final File destFile) throws IOException {
+        FileUtils.forceMkdir(destFile.getAbsoluteFile().getParentFile());
+        try (FileChannel in = FileChannel.open(srcFile.toPath(), StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(destFile.toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            for (long position = 0; position < size; position += ByteReplacer.MAP_WINDOW) {
+                MappedByteBuffer window = in.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(ByteReplacer.MAP_WINDOW, size - position));
+                while (window.hasRemaining()) {
+                    out.write(window);
+                }
+            }
+        }
+        destFile.setLastModified(srcFile.lastModified());
+    }
+
+    /**
+     * Copies the files of a resource one after the other while they are found.
+     *
+     * @return the number of files skipped as unchanged
+     */
+    private int copyFiles(final ResourceContext context) throws IOException {
+        final AtomicInteger unchanged = new AtomicInteger();
+        context.scan(new FileScanner.Listener() {
+            @Override
+            public void fileFound(final Path file, final String relativePath, final BasicFileAttributes attributes)
+                    throws IOException {
+                FileOperation operation = prepare(context, file.toFile());
+                operation.setAttributes(attributes);
+                // An existing destination is still a source when the scan reaches it
+                if (!operation.getDestFile().exists()) {
+                    context.addCreated(operation.getDestFile());
+                }
+                try {
+                    process(context, operation);
+                } finally {
+                    operation.log(getLog());
+                }
+                if (operation.isSkipped()) {
+                    unchanged.incrementAndGet();
+                }
+            }
+        });
+        return unchanged.get();
+    }
+
+    /**
+     * Copies the files of a resource on a pool of <code>threads</code> workers while they are found. Operations
+     * touching the same source or destination as an earlier one wait for it, so they happen in the order the files
+     * were found. The log output is written in that order as well, the first failing file in that order fails the
+     * build. Once a file failed no further operation is started, only the ones already running on the other workers
+     * finish, like the sequential copy stopping at the first failure.
+     *
+     * @return the number of files skipped as unchanged
+     */
+    private int copyFilesParallel(final ResourceContext context) throws IOException {
+        final List<FileOperation> operations = new ArrayList<FileOperation>();
+        final List<CompletableFuture<Void>> futures = new ArrayList<CompletableFuture<Void>>();
+        final Map<String, CompletableFuture<Void>> lastUse = new HashMap<String, CompletableFuture<Void>>();
+        final ExecutorService executor = Executors.newFixedThreadPool(context.getThreads());
+        final AtomicBoolean failed = new AtomicBoolean();
+        try {
+            context.scan(new FileScanner.Listener() {
+                @Override
+                public void fileFound(final Path file, final String relativePath,
+                        final BasicFileAttributes attributes) {
+                    if (failed.get()) {
+                        return;
+                    }
+                    File srcFile = file.toFile();
+                    String srcPath = srcFile.getAbsolutePath();
+                    final FileOperation operation = prepare(context, srcFile);
+                    operation.setAttributes(attributes);
+                    String destPath = operation.getDestFile().getAbsolutePath();
+                    // Nothing scheduled before touches it, so it exists now if it existed before the run
+                    if (!lastUse.containsKey(destPath) && !operation.getDestFile().exists()) {
+                        context.addCreated(operation.getDestFile());
+                    }
+                    CompletableFuture<Void> before = CompletableFuture.allOf(previous(lastUse, srcPath),
+                            previous(lastUse, destPath));
+                    CompletableFuture<Void> future = before.thenRunAsync(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (failed.get()) {
+                                return;
+                            }
+                            try {
+                                process(context, operation);
+                            } catch (IOException ex) {
+                                operation.setError(ex);
+                            } catch (RuntimeException ex) {
+                                operation.setError(new IOException(ex));
+                            }
+                            if (operation.getError() != null) {
+                                failed.set(true);
+                            }
+                        }
+                    }, executor);
+                    lastUse.put(srcPath, future);
+                    lastUse.put(destPath, future);
+                    operations.add(operation);
+                    futures.add(future);
+                }
+            });
+
+            IOException error = null;
+            int unchanged = 0;
+            for (int i = 0; i < operations.size(); i++) {
+                FileOperation operation = operations.get(i);
+                futures.get(i).join();
+                operation.log(getLog());
+                if (operation.isSkipped()) {
+                    unchanged++;
+                }
+                if (operation.getError() != null) {
+                    if (error == null) {
+                        error = operation.getError();
+                    } else {
+                        getLog().error("Failed to copy " + operation.getSrcFile() + ": " + operation.getError());
+                    }
+                }
+            }
+            if (error != null) {
+                throw error;
+            }
+            return unchanged;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    ResourceContext createContext(final Resource resource) throws MojoExecutionException {
+        if (resource.getSyncDirectory() != null && (resource.isMove() || isArchived(resource))) {
+            throw new MojoExecutionException("Resource " + resource.getId()
+                    + " can not sync a directory while moving files or with archives");
+        }
+        File workingDir;
+        if (Archives.isArchive(resource.getDirectory())) {
+            // The files extracted from an archive go to the build directory
+            workingDir = resolve(defaultDir == null ? "target" : defaultDir);
+        } else {
+            workingDir = resolve(resource.getDirectory() == null ? defaultDir : resource.getDirectory());
+        }
+        ResourceContext context = new ResourceContext(resource, workingDir, createRewriter(resource),
+                createReplacer(resource), resource.getThreads() == null ? threads : resource.getThreads(),
+                new ResourceMetrics(resource.getId(), reportSlowest));
+        if (sessionCache != null) {
+            context.setCache(sessionCache);
+        }
+        if (outputCache != null) {
+            context.setOutputCache(new OutputCache(outputCache));
+        }
+        return context;
+    }
+
+    ContentReplacer createReplacer(final Resource resource) throws MojoExecutionException {
+        validate(resource.getReplaces());
+        return new ContentReplacer(resource.getReplaces(), resource.getRegexWindow(),
+                resource.isSimultaneousReplaces());
+    }
+
+    PathRewriter createRewriter(final Resource resource) throws MojoExecutionException {
+        validate(resource.getPaths());
+        return new PathRewriter(resource.getPaths(), resource.isNormalizePath());
+    }
+
+    /**
+     * @return an empty file in the directory of <code>destFile</code>, so it can be renamed into place
+     */
+    private File createTempFile(final File destFile) throws IOException {
+        File parent = destFile.getAbsoluteFile().getParentFile();
+        FileUtils.forceMkdir(parent);
+        return File.createTempFile(destFile.getName(), ".tmp", parent);
     }
 
     @Override
@@ -103,33 +642,105 @@ public class CopyMojo extends AbstractMojo {
                 getLog().warn("No resources were defined to move or copy");
                 return;
             }
-            for (Resource resource : getResources()) {
-
-                File workingDir = new File(resource.getDirectory() == null ? defaultDir : resource.getDirectory());
-                if (!workingDir.isAbsolute()) {
-                    workingDir = new File(project.getBasedir(), resource.getDirectory() == null ? defaultDir
-                            : resource.getDirectory());
-                }
+            sessionCache = sessionCacheSize > 0 ? SessionCache.get(buildStart, sessionCacheSize) : null;
+            IncrementalManifest manifest = incremental && !dryRun ? IncrementalManifest.load(manifestFile) : null;
+            CopyPlan plan = dryRun ? new CopyPlan(planFile) : usePlan ? CopyPlan.load(planFile) : null;
+            ResourceContext[] contexts = new ResourceContext[getResources().length];
+            for (int i = 0; i < contexts.length; i++) {
+                contexts[i] = createContext(getResources()[i]);
+            }
+            if (preflight && !dryRun) {
+                preflight(contexts, manifest);
+            }
+            RunReport report = new RunReport();
+            int unchanged = 0;
+            int untouched = 0;
+            for (int i = 0; i < getResources().length; i++) {
+                Resource resource = getResources()[i];
+                long resourceStart = System.nanoTime();
+                ResourceContext context = contexts[i];
+                ResourceMetrics metrics = context.getMetrics();
+                File workingDir = context.getWorkingDir();
                 if (getLog().isInfoEnabled()) {
                     logResource(resource, workingDir);
                 }
-                for (File srcFile : getFiles(workingDir, resource)) {
-                    String destPath = getNewPath(resource, workingDir, srcFile);
-                    File destFile = new File(destPath);
-                    if (isShowfiles() && getLog().isInfoEnabled()) {
-                        StringBuilder sb = new StringBuilder();
-                        sb.append(resource.isMove() ? " mv " : " cp ").append(srcFile.getAbsolutePath())
-                                .append(System.lineSeparator());
-                        sb.append("        -> ").append(destFile.getAbsolutePath());
-                        getLog().info(sb);
+                String key = i + ":" + resource.getId();
+                if (isArchived(resource)) {
+                    if (dryRun) {
+                        getLog().info("Archives are not planned");
+                        continue;
+                    }
+                    copyArchive(context);
+                } else {
+                    if (dryRun) {
+                        planResource(context, plan.open(key, CopyPlan.fingerprint(resource, workingDir)), plan);
+                        continue;
                     }
-                    copyFile(resource, srcFile, destFile);
+                    if (plan != null) {
+                        applyPlan(context, plan.get(key, CopyPlan.fingerprint(resource, workingDir)));
+                    }
+                    // The sources of a move are gone afterwards, there is nothing to compare with
+                    if (manifest != null && !resource.isMove()) {
+                        context.setSection(manifest.open(key, IncrementalManifest.fingerprint(resource),
+                                incrementalHash));
+                    }
+                    if (resource.isMove() && resource.getReplaces().isEmpty()) {
+                        moveDirectories(context);
+                    }
+                    if (context.getThreads() > 1) {
+                        unchanged += copyFilesParallel(context);
+                    } else {
+                        unchanged += copyFiles(context);
+                    }
+                    if (context.isSynced()) {
+                        deleteStale(context);
+                    }
+                }
+                untouched += context.getUntouched();
+                if (context.getSection() != null) {
+                    manifest.commit(key, context.getSection());
+                }
+                if (getLog().isDebugEnabled()) {
+                    logTimings(context);
                 }
+                long cleanupStart = System.nanoTime();
                 try {
-                    cleanupEmptyDirs(workingDir);
+                    // The working directory of an archive is the build directory, not a tree of sources
+                    if (resource.getCleanupEmptyDirs() == EmptyDirCleanup.ALWAYS
+                            && !Archives.isArchive(resource.getDirectory())) {
+                        cleanupEmptyDirs(workingDir);
+                    } else if (resource.getCleanupEmptyDirs() == EmptyDirCleanup.AUTO) {
+                        cleanupEmptiedDirs(context);
+                    }
                 } catch (IOException ex) {
                     throw new MojoExecutionException("Could not cleanup empty directories", ex);
                 }
+                long end = System.nanoTime();
+                metrics.finish(context, end - cleanupStart, end - resourceStart);
+                report.add(metrics);
+            }
+            if (dryRun) {
+                plan.save();
+                getLog().info("Wrote the plan to " + plan.getFile());
+                return;
+            }
+            if (manifest != null) {
+                manifest.save();
+                getLog().info("Skipped " + unchanged + " unchanged files");
+            }
+            if (untouched > 0) {
+                getLog().info("Left " + untouched + " identical destinations untouched");
+            }
+            getLog().info(report.summary());
+            if (outputCache != null) {
+                int evicted = new OutputCache(outputCache).evict(outputCacheSize);
+                getLog().info(report.cacheSummary() + (evicted > 0 ? ", " + evicted + " entries evicted" : ""));
+            }
+            if (sessionCache != null) {
+                getLog().info(sessionCache.summary());
+            }
+            if (reportFile != null) {
+                report.write(reportFile);
             }
         } catch (IOException ex) {
             throw new MojoExecutionException("Error during CopyMojo", ex);
@@ -137,55 +748,228 @@ public class CopyMojo extends AbstractMojo {
 
     }
 
-    @SuppressWarnings("unchecked")
+    /**
+     * @return false if the delta write did not change the destination
+     */
+    private boolean finishDelta(final ResourceContext context, final DeltaWriter delta) {
+        context.getMetrics().addKept(delta.getKept());
+        return delta.isChanged();
+    }
+
     public List<File> getFiles(final File workingDir, final Resource resource) throws MojoExecutionException {
+        final List<File> files = new ArrayList<File>();
         try {
-            String includes = !resource.getIncludes().isEmpty() ? String.join(",", resource.getIncludes()) : null;
-            String excludes = !resource.getExcludes().isEmpty() ? String.join(",", resource.getExcludes()) : null;
-            return org.codehaus.plexus.util.FileUtils.getFiles(workingDir, includes, excludes);
+            new FileScanner(resource.getIncludes(), resource.getExcludes()).scan(workingDir.toPath(),
+                    new FileScanner.Listener() {
+                        @Override
+                        public void fileFound(final Path file, final String relativePath,
+                                final BasicFileAttributes attributes) {
+                            files.add(file.toFile());
+                        }
+                    });
         } catch (IOException e) {
             throw new MojoExecutionException("Unable to get paths to reprots", e);
         }
+        return files;
+    }
+
+    /**
+     * Deletes the files below the sync directory of a resource which are neither a source nor a destination of it.
+     */
+    private void deleteStale(final ResourceContext context) throws IOException {
+        Path syncDir = resolve(context.getResource().getSyncDirectory()).toPath().normalize();
+        if (!Files.isDirectory(syncDir)) {
+            return;
+        }
+        final List<Path> stale = new ArrayList<Path>();
+        Files.walkFileTree(syncDir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+                if (!attrs.isDirectory() && !context.isKept(file.toFile())) {
+                    stale.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        for (Path file : stale) {
+            Files.delete(file);
+            context.addEmptied(file.toFile().getParentFile());
+            context.getMetrics().addDeleted();
+            if (isShowfiles() && getLog().isInfoEnabled()) {
+                getLog().info(" rm " + file);
+            }
+        }
+        if (!stale.isEmpty()) {
+            getLog().info("Deleted " + stale.size() + " stale files from " + syncDir);
+        }
     }
 
-    private String getNewPath(final Resource resource, final File workingDir, final File file)
-            throws MojoExecutionException {
-        List<Replace> renames = resource.getPaths();
-        if (renames.isEmpty()) {
+    /**
+     * @return true if the file exists with exactly these bytes, comparing the size first
+     */
+    private boolean hasContent(final File file, final byte[] bytes) throws IOException {
+        return file.isFile() && file.length() == bytes.length
+                && Arrays.equals(FileUtils.readFileToByteArray(file), bytes);
+    }
+
+    /**
+     * Rewrites the path of a file. If the rules allow it, the destination directory is kept per source directory and
+     * only the name of the next files in there is rewritten.
+     */
+    String getNewPath(final ResourceContext context, final File file, final FileOperation operation) {
+        String planned = context.getPlannedPath(file);
+        if (planned != null) {
+            return planned;
+        }
+        Resource resource = context.getResource();
+        if (resource.getPaths().isEmpty()) {
             return file.getAbsolutePath();
         }
-        String path = resource.isWorkOnFullPath() ? file.getAbsolutePath() : file.getAbsolutePath().substring(
-                workingDir.getAbsolutePath().length());
+        PathRewriter rewriter = context.getRewriter();
+        String name = file.getName();
+        String sourceDir = context.hasDestinationDirs() && !isShowfiles() && isPlainName(name) ? file.getParent()
+                : null;
+        if (sourceDir != null) {
+            String destinationDir = context.getDestinationDir(sourceDir);
+            if (destinationDir != null) {
+                return destinationDir + rewriter.rewrite(name);
+            }
+        }
+        String newPath = rewritePath(context, file, operation);
+        if (sourceDir != null) {
+            // Keep the directory only if the whole path ends in the rewritten name
+            String newName = rewriter.rewrite(name);
+            int separator = newPath.length() - newName.length() - 1;
+            if (separator >= 0 && newPath.endsWith(newName)
+                    && (newPath.charAt(separator) == '/' || newPath.charAt(separator) == File.separatorChar)) {
+                context.putDestinationDir(sourceDir, newPath.substring(0, separator + 1));
+            }
+        }
+        return newPath;
+    }
+
+    /**
+     * @return true if the resource reads from or writes into an archive
+     */
+    boolean isArchived(final Resource resource) {
+        return Archives.isArchive(resource.getDirectory()) || resource.getArchive() != null;
+    }
+
+    /**
+     * @return true if the existing destination of a file copied or replaced in place is written block by block
+     */
+    private boolean isDelta(final Resource resource, final File srcFile, final File destFile) throws IOException {
+        return resource.getDeltaThreshold() > 0 && srcFile.length() >= resource.getDeltaThreshold()
+                && resource.isReplaceExisting() && !resource.isMove()
+                && resource.getTransferStrategy() != TransferStrategy.HARDLINK
+                && resource.getTransferStrategy() != TransferStrategy.SYMLINK
+                && !srcFile.getAbsolutePath().equals(destFile.getAbsolutePath())
+                && Files.isRegularFile(destFile.toPath(), LinkOption.NOFOLLOW_LINKS)
+                && !isHardLinked(srcFile, destFile);
+    }
+
+    /**
+     * Tells destinations sharing their content with other files, like the source of an earlier <code>HARDLINK</code>
+     * copy or an entry of the output cache, which would change as well when written in place.
+     */
+    private boolean isHardLinked(final File srcFile, final File destFile) throws IOException {
+        try {
+            Object links = Files.getAttribute(destFile.toPath(), "unix:nlink", LinkOption.NOFOLLOW_LINKS);
+            return ((Number) links).intValue() > 1;
+        } catch (UnsupportedOperationException | IllegalArgumentException ex) {
+            // Without the count of links only a link to the source is found
+            return Files.isSameFile(srcFile.toPath(), destFile.toPath());
+        }
+    }
+
+    /**
+     * @return true if the destination of a file copied without replaces has the size and modification time of the
+     *         source, or with <code>syncHash</code> its content
+     */
+    private boolean isInSync(final ResourceContext context, final FileOperation operation) throws IOException {
+        File srcFile = operation.getSrcFile();
+        File destFile = operation.getDestFile();
+        if (!destFile.isFile() || srcFile.getAbsolutePath().equals(destFile.getAbsolutePath())
+                || !isPlainCopy(context, operation)) {
+            return false;
+        }
+        if (context.getResource().isSyncHash()) {
+            return FileUtils.contentEquals(srcFile, destFile);
+        }
+        return srcFile.length() == destFile.length() && srcFile.lastModified() == destFile.lastModified();
+    }
+
+    /**
+     * @return true if the file is copied like without replaces, being binary or no replace matching it
+     */
+    private boolean isPlainCopy(final ResourceContext context, final File srcFile) throws IOException {
+        return context.getResource().getReplaces().isEmpty()
+                || context.getBinaryDetector().isBinary(context.relativize(srcFile), srcFile.toPath())
+                || context.getPrefilter() != null && !context.getPrefilter().matches(srcFile);
+    }
+
+    /**
+     * Tells whether the file of the operation is copied like without replaces, reading it only the first time.
+     */
+    private boolean isPlainCopy(final ResourceContext context, final FileOperation operation) throws IOException {
+        if (operation.getPlainCopy() == null) {
+            operation.setPlainCopy(isPlainCopy(context, operation.getSrcFile()));
+        }
+        return operation.getPlainCopy().booleanValue();
+    }
+
+    /**
+     * @return true if normalizing a path does not change the name
+     */
+    private boolean isPlainName(final String name) {
+        return !name.isEmpty() && !name.equals(".") && !name.equals("..") && name.indexOf('\\') < 0
+                && name.indexOf('/') < 0;
+    }
+
+    /**
+     * @return a path or a path relative to the base directory of the project
+     */
+    private File resolve(final String path) {
+        File file = new File(path);
+        if (file.isAbsolute()) {
+            return file;
+        }
+        return project == null ? file.getAbsoluteFile() : new File(project.getBasedir(), path);
+    }
+
+    /**
+     * Applies the rules to the path of a file relative to the root of a resource, starting with <code>/</code>.
+     */
+    private String rewriteEntry(final ResourceContext context, final String relativePath) {
+        String path = "/" + relativePath;
+        if (context.getResource().getPaths().isEmpty()) {
+            return path;
+        }
+        if (context.getResource().isNormalizePath()) {
+            path = FilenameUtils.normalize(path, true);
+        }
+        return context.getRewriter().rewrite(path);
+    }
+
+    /**
+     * Applies the rules to the whole path of a file.
+     */
+    private String rewritePath(final ResourceContext context, final File file, final FileOperation operation) {
+        Resource resource = context.getResource();
+        File workingDir = context.getWorkingDir();
+        String absolutePath = file.getAbsolutePath();
+        String path = resource.isWorkOnFullPath() ? absolutePath : absolutePath.substring(workingDir
+                .getAbsolutePath().length());
         if (resource.isNormalizePath()) {
             path = FilenameUtils.normalize(path, true);
         }
         if (isShowfiles()) {
-            getLog().info("---");
-            getLog().info(path);
-        }
-        for (Replace rename : renames) {
-            if (rename.getFrom() == null || rename.getTo() == null) {
-                throw new MojoExecutionException("From and To cannot be NULL: " + rename);
-            } else if (!rename.getFrom().equals(rename.getTo())) {
-                if (resource.isNormalizePath()) {
-                    if (rename.isRegex()) {
-                        path = path.replaceAll(FilenameUtils.normalize(rename.getFrom(), true),
-                                FilenameUtils.normalize(rename.getTo(), true));
-                    } else {
-                        path = path.replace(FilenameUtils.normalize(rename.getFrom(), true),
-                                FilenameUtils.normalize(rename.getTo(), true));
-                    }
-                } else {
-                    if (rename.isRegex()) {
-                        path = path.replaceAll(rename.getFrom(), rename.getTo());
-                    } else {
-                        path = path.replace(rename.getFrom(), rename.getTo());
-                    }
-                }
-            }
+            operation.addMessage("---");
+            operation.addMessage(path);
         }
+        path = context.getRewriter().rewrite(path);
         if (isShowfiles()) {
-            getLog().info(path);
+            operation.addMessage(path);
         }
         return resource.isWorkOnFullPath() ? path : workingDir.getAbsolutePath() + path;
     }
@@ -194,19 +978,60 @@ public class CopyMojo extends AbstractMojo {
         return resources;
     }
 
+    public File getReportFile() {
+        return reportFile;
+    }
+
+    public File getManifestFile() {
+        return manifestFile;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    public boolean isIncrementalHash() {
+        return incrementalHash;
+    }
+
+    /**
+     * @return true if the file is large enough to be read through memory mapped windows
+     */
+    private boolean isMapped(final Resource resource, final File file) {
+        return resource.getMmapThreshold() > 0 && file.length() >= resource.getMmapThreshold();
+    }
+
     public boolean isShowfiles() {
         return showfiles;
     }
 
+    public boolean isSkip() {
+        return skip;
+    }
+
     private void logResource(final Resource resource, final File workingDir) {
         StringBuilder sb = new StringBuilder();
         sb.append("----------").append(System.lineSeparator());
         sb.append("        Resource: ").append(resource.getId()).append(System.lineSeparator());
         sb.append("      WorkingDir: ").append(workingDir.getAbsolutePath()).append(System.lineSeparator());
+        if (resource.getArchive() != null) {
+            sb.append("         Archive: ").append(resource.getArchive()).append(System.lineSeparator());
+        }
         sb.append("         Charset: ").append(resource.getCharset()).append(System.lineSeparator());
         sb.append("            Move: ").append(resource.isMove()).append(System.lineSeparator());
+        sb.append("    CleanupEmpty: ").append(resource.getCleanupEmptyDirs()).append(System.lineSeparator());
         sb.append("  WorkOnFullPath: ").append(resource.isWorkOnFullPath()).append(System.lineSeparator());
         sb.append("   NormalizePath: ").append(resource.isNormalizePath()).append(System.lineSeparator());
+        sb.append("        Transfer: ").append(resource.getTransferStrategy()).append(System.lineSeparator());
+        sb.append("       Streaming: ").append(resource.isStreaming()).append(System.lineSeparator());
+        sb.append("   MmapThreshold: ").append(resource.getMmapThreshold()).append(System.lineSeparator());
+        sb.append("    Simultaneous: ").append(resource.isSimultaneousReplaces()).append(System.lineSeparator());
+        sb.append("         Threads: ").append(resource.getThreads() == null ? threads : resource.getThreads())
+                .append(System.lineSeparator());
         sb.append("        Includes:").append(System.lineSeparator());
         for (String include : resource.getIncludes()) {
             sb.append("                  ").append(include).append(System.lineSeparator());
@@ -215,6 +1040,14 @@ public class CopyMojo extends AbstractMojo {
         for (String exclude : resource.getExcludes()) {
             sb.append("                  ").append(exclude).append(System.lineSeparator());
         }
+        sb.append("  BinaryIncludes:").append(System.lineSeparator());
+        for (String include : resource.getBinaryIncludes()) {
+            sb.append("                  ").append(include).append(System.lineSeparator());
+        }
+        sb.append("    TextIncludes:").append(System.lineSeparator());
+        for (String include : resource.getTextIncludes()) {
+            sb.append("                  ").append(include).append(System.lineSeparator());
+        }
         sb.append("          Paths:").append(System.lineSeparator());
         for (Replace r : resource.getPaths()) {
             sb.append("                  ").append(r.getFrom()).append(" -> ").append(r.getTo())
@@ -228,11 +1061,393 @@ public class CopyMojo extends AbstractMojo {
         getLog().info(sb);
     }
 
+    /**
+     * Scans the resource and plans the operations without writing any file.
+     */
+    private void planResource(final ResourceContext context, final CopyPlan.Section section, final CopyPlan plan)
+            throws IOException {
+        final Resource resource = context.getResource();
+        final long[] totals = new long[3];
+        context.scan(new FileScanner.Listener() {
+            @Override
+            public void fileFound(final Path file, final String relativePath, final BasicFileAttributes attributes) {
+                File srcFile = file.toFile();
+                File destFile = new File(getNewPath(context, srcFile, new FileOperation(srcFile)));
+                CopyPlan.Entry entry = plan.add(section, resource, srcFile, attributes.size(), destFile);
+                totals[0]++;
+                totals[1] += attributes.size();
+                if (!entry.getConflict().equals(CopyPlan.NONE)) {
+                    totals[2]++;
+                }
+                if (isShowfiles() && getLog().isInfoEnabled()) {
+                    StringBuilder sb = new StringBuilder();
+                    sb.append(resource.isMove() ? " mv " : " cp ").append(srcFile.getAbsolutePath()).append(" (")
+                            .append(attributes.size()).append(" bytes)").append(System.lineSeparator());
+                    sb.append("        -> ").append(destFile.getAbsolutePath());
+                    if (!entry.getConflict().equals(CopyPlan.NONE)) {
+                        sb.append(" (").append(entry.getConflict()).append(')');
+                    }
+                    getLog().info(sb);
+                }
+            }
+        });
+        getLog().info("Planned " + totals[0] + " files with " + totals[1] + " bytes, " + totals[2] + " conflicts");
+    }
+
+    /**
+     * Plans the operations of all resources before any file is written and fails with all conflicts found at once:
+     * destinations which exist and are not replaced, and destinations of more than one source. Only the files which
+     * exist before the run are seen, not the ones an earlier resource is going to write. The files which the run leaves
+     * alone, known as unchanged by the manifest, in sync or copied onto themselves, are not planned.
+     */
+    private void preflight(final ResourceContext[] contexts, final IncrementalManifest manifest)
+            throws IOException, MojoExecutionException {
+        final CopyPlan plan = new CopyPlan(planFile);
+        List<CopyPlan.Entry> conflicts = new ArrayList<CopyPlan.Entry>();
+        for (int i = 0; i < contexts.length; i++) {
+            final ResourceContext context = contexts[i];
+            Resource resource = context.getResource();
+            if (isArchived(resource)) {
+                continue;
+            }
+            String key = i + ":" + resource.getId();
+            // Opened apart from the one of the run, what it keeps is dropped
+            final IncrementalManifest.Section manifestSection = manifest != null && !resource.isMove() ? manifest
+                    .open(key, IncrementalManifest.fingerprint(resource), incrementalHash) : null;
+            final CopyPlan.Section section = plan.open(key, "");
+            context.getScanner().scan(context.getWorkingDir().toPath(), new FileScanner.Listener() {
+                @Override
+                public void fileFound(final Path file, final String relativePath,
+                        final BasicFileAttributes attributes) throws IOException {
+                    File srcFile = file.toFile();
+                    FileOperation operation = new FileOperation(srcFile);
+                    File destFile = new File(getNewPath(context, srcFile, operation));
+                    operation.setDestFile(destFile);
+                    if (manifestSection != null && manifestSection.isUpToDate(srcFile, attributes, destFile)
+                            || context.isSynced() && isInSync(context, operation)) {
+                        return;
+                    }
+                    // Binary or not matched by any replace, a file which is its own destination is left as it is
+                    if (srcFile.getAbsolutePath().equals(destFile.getAbsolutePath())
+                            && !context.getResource().getReplaces().isEmpty() && isPlainCopy(context, operation)) {
+                        return;
+                    }
+                    plan.add(section, context.getResource(), srcFile, attributes.size(), destFile);
+                }
+            });
+            for (CopyPlan.Entry entry : section.getEntries()) {
+                if (entry.getConflict().equals(CopyPlan.EXISTS) || entry.getConflict().equals(CopyPlan.DUPLICATE)) {
+                    conflicts.add(entry);
+                }
+            }
+        }
+        if (!conflicts.isEmpty()) {
+            for (CopyPlan.Entry entry : conflicts) {
+                if (entry.getConflict().equals(CopyPlan.EXISTS)) {
+                    getLog().error("Destination exists: " + entry.getSrcPath() + " -> " + entry.getDestPath());
+                } else {
+                    getLog().error("Destination of several sources: " + entry.getSrcPath() + " -> "
+                            + entry.getDestPath() + ", also planned for " + plan.getFirstSource(entry.getDestPath()));
+                }
+            }
+            throw new MojoExecutionException(conflicts.size()
+                    + " conflicts found before copying, no file was written");
+        }
+    }
+
+    /**
+     * Copies a file unless the manifest section knows it as unchanged, and records it in the section otherwise.
+     */
+    void process(final ResourceContext context, final FileOperation operation) throws IOException {
+        IncrementalManifest.Section section = context.getSection();
+        File srcFile = operation.getSrcFile();
+        File destFile = operation.getDestFile();
+        ResourceMetrics metrics = context.getMetrics();
+        if (context.isSynced()) {
+            context.keep(srcFile);
+            context.keep(destFile);
+            if (isInSync(context, operation)) {
+                operation.setSkipped(true);
+                metrics.addSkipped();
+                if (isShowfiles()) {
+                    operation.addMessage("        in sync");
+                }
+                return;
+            }
+        }
+        if (section != null && section.isUpToDate(srcFile, operation.getAttributes(), destFile)) {
+            operation.setSkipped(true);
+            metrics.addSkipped();
+            if (isShowfiles()) {
+                operation.addMessage("        unchanged");
+            }
+            return;
+        }
+        long start = System.nanoTime();
+        long size = operation.getAttributes() != null ? operation.getAttributes().size() : srcFile.length();
+        OutputCache cache = context.getOutputCache();
+        String key = cache != null && !isPlainCopy(context, operation) ? cache.key(srcFile,
+                context.getOutputFingerprint()) : null;
+        Boolean cached = key != null ? copyCached(context, cache.get(key), srcFile, destFile) : null;
+        boolean written;
+        if (cached != null) {
+            written = cached.booleanValue();
+            metrics.addCached(true);
+            if (isShowfiles()) {
+                operation.addMessage("        from the output cache");
+            }
+        } else {
+            written = copyFile(context, srcFile, destFile, isPlainCopy(context, operation));
+            if (key != null) {
+                metrics.addCached(false);
+                cache.put(key, destFile);
+            }
+        }
+        if (!written) {
+            context.addUntouched();
+            if (isShowfiles()) {
+                operation.addMessage("        identical, left untouched");
+            }
+        }
+        metrics.addFile(srcFile.getPath(), context.getResource().isMove(), size, written ? destFile.length() : 0,
+                System.nanoTime() - start);
+        if (context.getResource().isMove() && !srcFile.getAbsolutePath().equals(destFile.getAbsolutePath())) {
+            context.addEmptied(srcFile.getParentFile());
+        }
+        if (section != null) {
+            section.record(srcFile, operation.getAttributes(), destFile);
+        }
+    }
+
+    /**
+     * Streams the source through the replacer into a temporary file next to the destination, so the content never
+     * has to fit into memory and the source may be its own destination.
+     */
+    private boolean streamFile(final ResourceContext context, final File srcFile, final File destFile)
+            throws IOException {
+        Charset charset = Charset.forName(context.getResource().getCharset());
+        if (isDelta(context.getResource(), srcFile, destFile)) {
+            DeltaWriter delta = new DeltaWriter(destFile.toPath());
+            try (DeltaWriter out = delta) {
+                if (context.getByteReplacer() != null) {
+                    try (FileChannel in = FileChannel.open(srcFile.toPath(), StandardOpenOption.READ)) {
+                        if (isMapped(context.getResource(), srcFile)) {
+                            context.getByteReplacer().replaceMapped(in, out);
+                        } else {
+                            context.getByteReplacer().replace(in, out);
+                        }
+                    }
+                } else {
+                    context.getReplacer().replace(new InputStreamReader(new FileInputStream(srcFile), charset),
+                            new OutputStreamWriter(Channels.newOutputStream(out), charset));
+                }
+            }
+            return finishDelta(context, delta);
+        }
+        File tmpFile = createTempFile(destFile);
+        try {
+            if (context.getByteReplacer() != null) {
+                try (FileChannel in = FileChannel.open(srcFile.toPath(), StandardOpenOption.READ);
+                        FileChannel out = FileChannel.open(tmpFile.toPath(), StandardOpenOption.WRITE)) {
+                    if (isMapped(context.getResource(), srcFile)) {
+                        context.getByteReplacer().replaceMapped(in, out);
+                    } else {
+                        context.getByteReplacer().replace(in, out);
+                    }
+                }
+            } else {
+                context.getReplacer().replace(new InputStreamReader(new FileInputStream(srcFile), charset),
+                        new OutputStreamWriter(new FileOutputStream(tmpFile), charset));
+            }
+            if (context.getResource().isSkipUnchanged() && destFile.isFile()
+                    && FileUtils.contentEquals(tmpFile, destFile)) {
+                return false;
+            }
+            replaceWith(tmpFile, destFile);
+            return true;
+        } finally {
+            FileUtils.deleteQuietly(tmpFile);
+        }
+    }
+
+    private void logTimings(final ResourceContext context) {
+        PathRewriter rewriter = context.getRewriter();
+        ContentReplacer replacer = context.getReplacer();
+        StringBuilder sb = new StringBuilder();
+        sb.append("Paths: ").append(rewriter.getRuleCount()).append(" rules compiled in ")
+                .append(TimeUnit.NANOSECONDS.toMillis(rewriter.getCompileNanos())).append(" ms, matched in ")
+                .append(TimeUnit.NANOSECONDS.toMillis(rewriter.getMatchNanos())).append(" ms");
+        getLog().debug(sb);
+        sb.setLength(0);
+        sb.append("Replaces: ").append(replacer.getStepCount()).append(" passes compiled in ")
+                .append(TimeUnit.NANOSECONDS.toMillis(replacer.getCompileNanos())).append(" ms, matched in ")
+                .append(TimeUnit.NANOSECONDS.toMillis(replacer.getMatchNanos())).append(" ms")
+                .append(context.getByteReplacer() != null ? " on bytes" : "")
+                .append(context.getPrefilter() != null ? ", prefiltered" : "");
+        getLog().debug(sb);
+    }
+
+    /**
+     * Renames the directories of a move whose files all keep their place below a new directory in one operation each,
+     * the other files are moved one by one afterwards.
+     */
+    private void moveDirectories(final ResourceContext context) throws IOException {
+        final List<ResourceContext.FoundFile> found = new ArrayList<ResourceContext.FoundFile>();
+        final DirectoryMoves moves = new DirectoryMoves(context.getWorkingDir().toPath());
+        context.scan(new FileScanner.Listener() {
+            @Override
+            public void fileFound(final Path file, final String relativePath, final BasicFileAttributes attributes) {
+                found.add(new ResourceContext.FoundFile(file, relativePath, attributes));
+                File srcFile = file.toFile();
+                moves.add(relativePath, new File(getNewPath(context, srcFile, new FileOperation(srcFile))));
+            }
+        });
+        Map<String, File> renamed = new HashMap<String, File>();
+        for (Map.Entry<String, File> move : moves.plan().entrySet()) {
+            File srcDir = new File(context.getWorkingDir(), move.getKey());
+            File destDir = move.getValue();
+            try {
+                FileUtils.forceMkdir(destDir.getAbsoluteFile().getParentFile());
+                Files.move(srcDir.toPath(), destDir.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException ex) {
+                // Like across file systems, its files are moved one by one
+                getLog().debug("Could not rename " + srcDir + ": " + ex);
+                continue;
+            }
+            renamed.put(move.getKey(), destDir);
+            context.addEmptied(srcDir.getParentFile());
+            if (isShowfiles() && getLog().isInfoEnabled()) {
+                StringBuilder sb = new StringBuilder();
+                sb.append(" mv ").append(srcDir.getAbsolutePath()).append(System.lineSeparator());
+                sb.append("        -> ").append(destDir.getAbsolutePath());
+                getLog().info(sb);
+            }
+        }
+        if (renamed.isEmpty()) {
+            context.setFound(found);
+            return;
+        }
+        List<ResourceContext.FoundFile> remaining = new ArrayList<ResourceContext.FoundFile>();
+        for (ResourceContext.FoundFile file : found) {
+            if (!DirectoryMoves.isRenamedWith(file.getRelativePath(), renamed)) {
+                remaining.add(file);
+            }
+        }
+        context.getMetrics().addMoved(found.size() - remaining.size());
+        context.setFound(remaining);
+    }
+
+    /**
+     * Renames the file if source and destination are on the same file system, copies and deletes it otherwise.
+     */
+    private void moveFile(final File srcFile, final File destFile) throws IOException {
+        FileUtils.forceMkdir(destFile.getAbsoluteFile().getParentFile());
+        try {
+            Files.move(srcFile.toPath(), destFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            FileUtils.moveFile(srcFile, destFile);
+        }
+    }
+
+    /**
+     * Renames <code>tmpFile</code> to <code>destFile</code>, atomically where the file system supports it.
+     */
+    private void replaceWith(final File tmpFile, final File destFile) throws IOException {
+        try {
+            Files.move(tmpFile.toPath(), destFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(tmpFile.toPath(), destFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void validate(final List<Replace> replaces) throws MojoExecutionException {
+        for (Replace replace : replaces) {
+            if (replace.getFrom() == null || replace.getTo() == null) {
+                throw new MojoExecutionException("From and To cannot be NULL: " + replace);
+            }
+        }
+    }
+
+    /**
+     * Computes the destination of a file and collects the log output of doing so.
+     */
+    FileOperation prepare(final ResourceContext context, final File srcFile) {
+        Resource resource = context.getResource();
+        FileOperation operation = new FileOperation(srcFile);
+        File destFile = new File(getNewPath(context, srcFile, operation));
+        operation.setDestFile(destFile);
+        if (isShowfiles() && getLog().isInfoEnabled()) {
+            StringBuilder sb = new StringBuilder();
+            sb.append(resource.isMove() ? " mv " : " cp ").append(srcFile.getAbsolutePath())
+                    .append(System.lineSeparator());
+            sb.append("        -> ").append(destFile.getAbsolutePath());
+            operation.addMessage(sb);
+        }
+        return operation;
+    }
+
+    private CompletableFuture<Void> previous(final Map<String, CompletableFuture<Void>> lastUse, final String path) {
+        CompletableFuture<Void> previous = lastUse.get(path);
+        return previous == null ? CompletableFuture.<Void> completedFuture(null) : previous;
+    }
+
+    public void setDryRun(final boolean dryRun) {
+        this.dryRun = dryRun;
+    }
+
+    public void setIncremental(final boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    public void setIncrementalHash(final boolean incrementalHash) {
+        this.incrementalHash = incrementalHash;
+    }
+
+    public void setManifestFile(final File manifestFile) {
+        this.manifestFile = manifestFile;
+    }
+
+    public void setOutputCache(final File outputCache) {
+        this.outputCache = outputCache;
+    }
+
+    public void setOutputCacheSize(final long outputCacheSize) {
+        this.outputCacheSize = outputCacheSize;
+    }
+
+    public void setPlanFile(final File planFile) {
+        this.planFile = planFile;
+    }
+
+    public void setPreflight(final boolean preflight) {
+        this.preflight = preflight;
+    }
+
+    public void setReportFile(final File reportFile) {
+        this.reportFile = reportFile;
+    }
+
+    public void setReportSlowest(final int reportSlowest) {
+        this.reportSlowest = reportSlowest;
+    }
+
     public void setResources(final Resource[] resources) {
         this.resources = resources;
     }
 
+    public void setSessionCacheSize(final long sessionCacheSize) {
+        this.sessionCacheSize = sessionCacheSize;
+    }
+
     public void setShowfiles(final boolean showfiles) {
         this.showfiles = showfiles;
     }
+
+    public void setThreads(final int threads) {
+        this.threads = threads;
+    }
+
+    public void setUsePlan(final boolean usePlan) {
+        this.usePlan = usePlan;
+    }
 }
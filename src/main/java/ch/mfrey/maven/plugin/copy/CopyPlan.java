@@ -0,0 +1,234 @@
+package ch.mfrey.maven.plugin.copy;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * The operations a run would do, computed by a dry run without writing any other file. A later run can take the
+ * sources and destinations of a resource from the plan instead of scanning and rewriting the paths again, as long as
+ * the configuration of the resource did not change. Files added after the plan was written are not copied then.
+ */
+public class CopyPlan {
+
+    /**
+     * One planned copy or move.
+     */
+    static class Entry {
+
+        private final String conflict;
+
+        private final String destPath;
+
+        private final boolean move;
+
+        private final long size;
+
+        private final String srcPath;
+
+        Entry(final boolean move, final long size, final String conflict, final String srcPath,
+                final String destPath) {
+            this.move = move;
+            this.size = size;
+            this.conflict = conflict;
+            this.srcPath = srcPath;
+            this.destPath = destPath;
+        }
+
+        String getConflict() {
+            return conflict;
+        }
+
+        String getDestPath() {
+            return destPath;
+        }
+
+        long getSize() {
+            return size;
+        }
+
+        String getSrcPath() {
+            return srcPath;
+        }
+
+        boolean isMove() {
+            return move;
+        }
+    }
+
+    /**
+     * The operations of one resource.
+     */
+    static class Section {
+
+        private final List<Entry> entries = new ArrayList<Entry>();
+
+        private final String fingerprint;
+
+        Section(final String fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+
+        void add(final Entry entry) {
+            entries.add(entry);
+        }
+
+        List<Entry> getEntries() {
+            return entries;
+        }
+    }
+
+    /** Another source of the run has the same destination. */
+    static final String DUPLICATE = "duplicate";
+
+    /** The destination exists and the resource does not replace existing files, the run would fail. */
+    static final String EXISTS = "exists";
+
+    static final String NONE = "-";
+
+    /** The destination exists and is replaced. */
+    static final String REPLACE = "replace";
+
+    private static final String COPY = "cp";
+
+    private static final String HEADER = "# copy-maven-plugin plan";
+
+    private static final String MOVE = "mv";
+
+    private static final String RESOURCE = "resource";
+
+    private static final String SEPARATOR = "\t";
+
+    /**
+     * @return a fingerprint of everything in the configuration of the resource which changes the plan
+     */
+    public static String fingerprint(final Resource resource, final File workingDir) {
+        return Checksums.of(IncrementalManifest.fingerprint(resource) + '\n' + workingDir.getAbsolutePath() + '\n'
+                + resource.getIncludes() + '\n' + resource.getExcludes() + '\n' + resource.isReplaceExisting());
+    }
+
+    /**
+     * Reads a plan, a missing or unreadable one is empty.
+     */
+    public static CopyPlan load(final File file) {
+        CopyPlan plan = new CopyPlan(file);
+        if (!file.isFile()) {
+            return plan;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            Section section = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(SEPARATOR);
+                if (parts.length == 3 && parts[0].equals(RESOURCE)) {
+                    section = new Section(parts[2]);
+                    plan.sections.put(parts[1], section);
+                } else if (parts.length == 5 && (parts[0].equals(COPY) || parts[0].equals(MOVE)) && section != null) {
+                    section.add(new Entry(parts[0].equals(MOVE), Long.parseLong(parts[1]), parts[2], parts[3],
+                            parts[4]));
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            // A broken plan only costs a scan
+            return new CopyPlan(file);
+        }
+        return plan;
+    }
+
+    /** The destinations of all resources planned so far with their first source. */
+    private final Map<String, String> destinations = new HashMap<String, String>();
+
+    private final File file;
+
+    private final Map<String, Section> sections = new LinkedHashMap<String, Section>();
+
+    CopyPlan(final File file) {
+        this.file = file;
+    }
+
+    /**
+     * Plans a copy or move, telling the conflict with the files on disk and the destinations planned before. A source
+     * which is its own destination, like a file replaced in place after an earlier resource wrote it, conflicts only
+     * when it is replaced without <code>replaceExisting</code>.
+     */
+    Entry add(final Section section, final Resource resource, final File srcFile, final long size,
+            final File destFile) {
+        String srcPath = srcFile.getAbsolutePath();
+        String destPath = destFile.getAbsolutePath();
+        String conflict = NONE;
+        if (srcPath.equals(destPath)) {
+            if (!resource.getReplaces().isEmpty() && !resource.isReplaceExisting()) {
+                conflict = EXISTS;
+            }
+        } else {
+            if (destinations.containsKey(destPath)) {
+                conflict = DUPLICATE;
+            } else {
+                destinations.put(destPath, srcPath);
+                if (destFile.exists()) {
+                    conflict = resource.isReplaceExisting() ? REPLACE : EXISTS;
+                }
+            }
+        }
+        Entry entry = new Entry(resource.isMove(), size, conflict, srcPath, destPath);
+        section.add(entry);
+        return entry;
+    }
+
+    /**
+     * @return the operations planned for the resource, null if there are none or its configuration changed since
+     */
+    Section get(final String key, final String fingerprint) {
+        Section section = sections.get(key);
+        return section != null && section.fingerprint.equals(fingerprint) ? section : null;
+    }
+
+    /**
+     * @return the first source planned for the destination
+     */
+    String getFirstSource(final String destPath) {
+        return destinations.get(destPath);
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * Starts the section of a resource, replacing the one planned before.
+     */
+    Section open(final String key, final String fingerprint) {
+        Section section = new Section(fingerprint);
+        sections.put(key, section);
+        return section;
+    }
+
+    public void save() throws IOException {
+        FileUtils.forceMkdir(file.getAbsoluteFile().getParentFile());
+        File tmpFile = new File(file.getAbsolutePath() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(tmpFile.toPath(), StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.write('\n');
+            for (Map.Entry<String, Section> section : sections.entrySet()) {
+                writer.write(RESOURCE + SEPARATOR + section.getKey() + SEPARATOR + section.getValue().fingerprint
+                        + '\n');
+                for (Entry entry : section.getValue().entries) {
+                    writer.write((entry.move ? MOVE : COPY) + SEPARATOR + entry.size + SEPARATOR + entry.conflict
+                            + SEPARATOR + entry.srcPath + SEPARATOR + entry.destPath + '\n');
+                }
+            }
+        }
+        Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+}
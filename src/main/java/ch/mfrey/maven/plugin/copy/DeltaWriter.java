@@ -0,0 +1,126 @@
+package ch.mfrey.maven.plugin.copy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes new content over an existing file block by block, comparing every block with the one at the same position
+ * in the file and writing only the blocks which differ. Closing it cuts the file to the length of the new content.
+ * The file is changed in place, so a failure leaves it partly written.
+ */
+class DeltaWriter implements WritableByteChannel {
+
+    /** The size of the blocks compared. */
+    static final int BLOCK_SIZE = 64 * 1024;
+
+    private final ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+
+    private final FileChannel channel;
+
+    private final ByteBuffer existing = ByteBuffer.allocate(BLOCK_SIZE);
+
+    /** The bytes of the new content left in place because the file already had them. */
+    private long kept;
+
+    private boolean open = true;
+
+    private final long originalSize;
+
+    private long position;
+
+    /** The bytes written into the file. */
+    private long written;
+
+    DeltaWriter(final Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        originalSize = channel.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!open) {
+            return;
+        }
+        open = false;
+        try {
+            flushBlock();
+            if (originalSize > position) {
+                channel.truncate(position);
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Compares the collected block with the file and writes it if it differs.
+     */
+    private void flushBlock() throws IOException {
+        block.flip();
+        int length = block.remaining();
+        if (length == 0) {
+            block.clear();
+            return;
+        }
+        existing.clear();
+        existing.limit(length);
+        while (existing.hasRemaining() && channel.read(existing, position + existing.position()) >= 0) {
+            // Until the block is complete or the file ends
+        }
+        existing.flip();
+        if (existing.equals(block)) {
+            kept += length;
+        } else {
+            while (block.hasRemaining()) {
+                channel.write(block, position + block.position());
+            }
+            written += length;
+        }
+        position += length;
+        block.clear();
+    }
+
+    long getKept() {
+        return kept;
+    }
+
+    long getWritten() {
+        return written;
+    }
+
+    /**
+     * @return true if the content of the file changed, valid after closing
+     */
+    boolean isChanged() {
+        return written > 0 || originalSize != position;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public int write(final ByteBuffer src) throws IOException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+        int count = src.remaining();
+        while (src.hasRemaining()) {
+            int length = Math.min(block.remaining(), src.remaining());
+            ByteBuffer slice = src.duplicate();
+            slice.limit(slice.position() + length);
+            block.put(slice);
+            src.position(src.position() + length);
+            if (!block.hasRemaining()) {
+                flushBlock();
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,176 @@
+package ch.mfrey.maven.plugin.copy;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Finds the directories of a move which can be renamed as a whole instead of moving their files one by one: every
+ * entry below them is a selected regular file, and every file keeps its relative path below one common destination
+ * which does not exist yet.
+ */
+class DirectoryMoves {
+
+    /**
+     * What is known about a directory holding selected files.
+     */
+    private static class Directory {
+
+        private boolean complete = true;
+
+        private boolean consistent = true;
+
+        private String destination;
+
+        private int present;
+
+        private int selected;
+    }
+
+    private final Map<String, Directory> directories = new HashMap<String, Directory>();
+
+    private final Path workingDir;
+
+    DirectoryMoves(final Path workingDir) {
+        this.workingDir = workingDir;
+    }
+
+    /**
+     * Adds a selected file and its destination.
+     *
+     * @param relativePath
+     *            the path relative to the working directory, separated by <code>/</code>
+     */
+    void add(final String relativePath, final File destFile) {
+        String destPath = destFile.getAbsolutePath();
+        int slash = relativePath.lastIndexOf('/');
+        while (slash > 0) {
+            String path = relativePath.substring(0, slash);
+            Directory directory = directories.get(path);
+            if (directory == null) {
+                directory = new Directory();
+                directories.put(path, directory);
+            }
+            directory.selected++;
+            if (directory.consistent) {
+                String suffix = relativePath.substring(slash).replace('/', File.separatorChar);
+                String destination = destPath.endsWith(suffix) ? destPath.substring(0, destPath.length()
+                        - suffix.length()) : null;
+                if (destination == null || directory.destination != null
+                        && !directory.destination.equals(destination)) {
+                    directory.consistent = false;
+                } else {
+                    directory.destination = destination;
+                }
+            }
+            slash = relativePath.lastIndexOf('/', slash - 1);
+        }
+    }
+
+    private void incomplete(final String relativePath) {
+        for (String path = parent(relativePath); path != null; path = parent(path)) {
+            Directory directory = directories.get(path);
+            if (directory != null) {
+                directory.complete = false;
+            }
+        }
+    }
+
+    private boolean isRenamable(final String relativePath, final Directory directory) {
+        if (!directory.consistent || !directory.complete || directory.present != directory.selected) {
+            return false;
+        }
+        Path src = workingDir.resolve(relativePath).toAbsolutePath().normalize();
+        Path dest = Paths.get(directory.destination).toAbsolutePath().normalize();
+        return !dest.startsWith(src) && !src.startsWith(dest) && !Files.exists(dest);
+    }
+
+    /**
+     * @return true if a directory above the path is renamed
+     */
+    static boolean isRenamedWith(final String relativePath, final Map<String, File> renames) {
+        for (String path = parent(relativePath); path != null; path = parent(path)) {
+            if (renames.containsKey(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String parent(final String relativePath) {
+        int slash = relativePath.lastIndexOf('/');
+        return slash > 0 ? relativePath.substring(0, slash) : null;
+    }
+
+    /**
+     * Counts what is really below the directories, anything which is not a selected regular file keeps its
+     * directories from being renamed.
+     *
+     * @return the topmost directories which can be renamed, relative to the working directory, with their destination
+     */
+    Map<String, File> plan() throws IOException {
+        if (directories.isEmpty()) {
+            return new LinkedHashMap<String, File>();
+        }
+        Files.walkFileTree(workingDir, new SimpleFileVisitor<Path>() {
+
+            @Override
+            public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) {
+                if (dir.equals(workingDir)) {
+                    return FileVisitResult.CONTINUE;
+                }
+                String path = relativize(dir);
+                if (directories.containsKey(path)) {
+                    return FileVisitResult.CONTINUE;
+                }
+                // Nothing selected in there, it would be carried along
+                incomplete(path);
+                return FileVisitResult.SKIP_SUBTREE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+                String path = relativize(file);
+                if (!attrs.isRegularFile()) {
+                    incomplete(path);
+                    return FileVisitResult.CONTINUE;
+                }
+                for (String parent = parent(path); parent != null; parent = parent(parent)) {
+                    directories.get(parent).present++;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(final Path file, final IOException exc) {
+                incomplete(relativize(file));
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        Map<String, File> renames = new LinkedHashMap<String, File>();
+        // Sorted, a directory comes before the ones below it
+        for (Map.Entry<String, Directory> entry : new TreeMap<String, Directory>(directories).entrySet()) {
+            String path = entry.getKey();
+            if (!isRenamedWith(path, renames) && isRenamable(path, entry.getValue())) {
+                renames.put(path, new File(entry.getValue().destination));
+            }
+        }
+        return renames;
+    }
+
+    private String relativize(final Path file) {
+        String separator = file.getFileSystem().getSeparator();
+        String path = workingDir.relativize(file).toString();
+        return separator.equals("/") ? path : path.replace(separator, "/");
+    }
+}
@@ -0,0 +1,16 @@
+package ch.mfrey.maven.plugin.copy;
+
+/**
+ * Which empty directories are deleted after a resource was copied.
+ */
+public enum EmptyDirCleanup {
+
+    /** Only the directories a move emptied, walking up from the parents of the moved sources. */
+    AUTO,
+
+    /** Every empty directory below the working directory, also after a copy. */
+    ALWAYS,
+
+    /** None. */
+    NEVER
+}
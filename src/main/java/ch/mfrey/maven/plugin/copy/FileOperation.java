@@ -0,0 +1,96 @@
+package ch.mfrey.maven.plugin.copy;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * The copy or move of a single file. The log output is collected so that files processed in parallel can still be
+ * logged in the order they were found.
+ */
+class FileOperation {
+
+    private BasicFileAttributes attributes;
+
+    private File destFile;
+
+    private IOException error;
+
+    private final List<CharSequence> messages = new ArrayList<CharSequence>();
+
+    /** Whether the file is copied like without replaces, null until it is known. */
+    private Boolean plainCopy;
+
+    private boolean skipped;
+
+    private final File srcFile;
+
+    FileOperation(final File srcFile) {
+        this.srcFile = srcFile;
+    }
+
+    void addMessage(final CharSequence message) {
+        messages.add(message);
+    }
+
+    BasicFileAttributes getAttributes() {
+        return attributes;
+    }
+
+    File getDestFile() {
+        return destFile;
+    }
+
+    IOException getError() {
+        return error;
+    }
+
+    Boolean getPlainCopy() {
+        return plainCopy;
+    }
+
+    File getSrcFile() {
+        return srcFile;
+    }
+
+    /**
+     * @return true if the file was left alone because it did not change
+     */
+    boolean isSkipped() {
+        return skipped;
+    }
+
+    /**
+     * Writes and forgets the collected messages.
+     */
+    void log(final Log log) {
+        for (CharSequence message : messages) {
+            log.info(message);
+        }
+        messages.clear();
+    }
+
+    void setAttributes(final BasicFileAttributes attributes) {
+        this.attributes = attributes;
+    }
+
+    void setDestFile(final File destFile) {
+        this.destFile = destFile;
+    }
+
+    void setError(final IOException error) {
+        this.error = error;
+    }
+
+    void setPlainCopy(final Boolean plainCopy) {
+        this.plainCopy = plainCopy;
+    }
+
+    void setSkipped(final boolean skipped) {
+        this.skipped = skipped;
+    }
+}
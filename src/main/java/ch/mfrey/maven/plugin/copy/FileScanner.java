@@ -0,0 +1,221 @@
+package ch.mfrey.maven.plugin.copy;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Finds the files below a directory matching the includes and none of the excludes, with the same semantics as
+ * <code>org.codehaus.plexus.util.FileUtils.getFiles</code>. Directories which cannot hold an included file or whose
+ * whole content is excluded (like <code>**&#47;node_modules/**</code>) are not entered at all, and every file is
+ * handed to the {@link Listener} as soon as it is found.
+ */
+public class FileScanner {
+
+    /**
+     * Receives the files found.
+     */
+    public interface Listener {
+
+        /**
+         * @param file
+         *            the file found
+         * @param relativePath
+         *            the path relative to the scanned directory, separated by <code>/</code>
+         * @param attributes
+         *            the attributes read while scanning
+         */
+        void fileFound(Path file, String relativePath, BasicFileAttributes attributes) throws IOException;
+    }
+
+    private final List<PathPattern> excludes;
+
+    private final List<PathPattern> includes;
+
+    public FileScanner(final List<String> includes, final List<String> excludes) {
+        this.includes = PathPattern.parse(includes.isEmpty() ? Collections.singletonList("**") : includes);
+        this.excludes = PathPattern.parse(excludes);
+    }
+
+    /**
+     * @return true if no file below <code>directory</code> can be included
+     */
+    private boolean canSkip(final String directory) {
+        boolean couldHoldIncluded = false;
+        for (PathPattern include : includes) {
+            if (include.couldMatchBelow(directory)) {
+                couldHoldIncluded = true;
+                break;
+            }
+        }
+        if (!couldHoldIncluded) {
+            return true;
+        }
+        for (PathPattern exclude : excludes) {
+            if (exclude.matchesAllBelow(directory)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the relative path is included and not excluded
+     */
+    public boolean isSelected(final String relativePath) {
+        for (PathPattern include : includes) {
+            if (include.matches(relativePath)) {
+                for (PathPattern exclude : excludes) {
+                    if (exclude.matches(relativePath)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the entries of a directory, null if it can not be read
+     */
+    private List<SessionCache.Child> list(final Path directory) {
+        List<SessionCache.Child> children = new ArrayList<SessionCache.Child>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path child : stream) {
+                BasicFileAttributes attributes = readAttributes(child);
+                if (attributes != null) {
+                    children.add(new SessionCache.Child(child.getFileName().toString(), attributes.isDirectory(),
+                            attributes.isRegularFile()));
+                }
+            }
+        } catch (IOException ex) {
+            return null;
+        }
+        return children;
+    }
+
+    /**
+     * @return the attributes of the file or the target of the link, null if they can not be read
+     */
+    private BasicFileAttributes readAttributes(final Path file) {
+        try {
+            return Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    private String relativize(final Path directory, final Path file) {
+        String separator = file.getFileSystem().getSeparator();
+        String path = directory.relativize(file).toString();
+        return separator.equals("/") ? path : path.replace(separator, "/");
+    }
+
+    /**
+     * Walks <code>directory</code>, following symbolic links, and reports the selected regular files.
+     *
+     * @throws IOException
+     *             if <code>directory</code> is not a directory or the listener fails
+     */
+    public void scan(final Path directory, final Listener listener) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            throw new IOException("basedir " + directory + " is not a directory");
+        }
+        Files.walkFileTree(directory, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE,
+                new SimpleFileVisitor<Path>() {
+
+                    @Override
+                    public FileVisitResult postVisitDirectory(final Path dir, final IOException exc) {
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) {
+                        if (dir.equals(directory) || !canSkip(relativize(directory, dir))) {
+                            return FileVisitResult.CONTINUE;
+                        }
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs)
+                            throws IOException {
+                        if (attrs.isRegularFile()) {
+                            String relativePath = relativize(directory, file);
+                            if (isSelected(relativePath)) {
+                                listener.fileFound(file, relativePath, attrs);
+                            }
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(final Path file, final IOException exc) {
+                        // Unreadable entries and symbolic link cycles are ignored like the plexus scanner does
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+    }
+
+    /**
+     * Like {@link #scan(Path, Listener)}, taking the listings of the directories from the cache while their
+     * modification time did not change. The attributes of the files reported are always read again.
+     */
+    void scan(final Path directory, final Listener listener, final SessionCache cache) throws IOException {
+        BasicFileAttributes attributes = readAttributes(directory);
+        if (attributes == null || !attributes.isDirectory()) {
+            throw new IOException("basedir " + directory + " is not a directory");
+        }
+        scan(directory, directory, attributes, listener, cache, new HashSet<Object>());
+    }
+
+    private void scan(final Path root, final Path directory, final BasicFileAttributes attributes,
+            final Listener listener, final SessionCache cache, final Set<Object> ancestors) throws IOException {
+        Object key = attributes.fileKey();
+        if (key != null && !ancestors.add(key)) {
+            // A symbolic link cycle
+            return;
+        }
+        try {
+            List<SessionCache.Child> children = cache.getListing(directory, attributes);
+            if (children == null) {
+                children = list(directory);
+                if (children == null) {
+                    return;
+                }
+                cache.putListing(directory, attributes, children);
+            }
+            for (SessionCache.Child child : children) {
+                Path file = directory.resolve(child.getName());
+                String relativePath = relativize(root, file);
+                if (child.isDirectory() ? canSkip(relativePath) : !child.isRegularFile() || !isSelected(relativePath)) {
+                    continue;
+                }
+                BasicFileAttributes childAttributes = readAttributes(file);
+                if (childAttributes == null) {
+                    continue;
+                } else if (childAttributes.isDirectory()) {
+                    scan(root, file, childAttributes, listener, cache, ancestors);
+                } else if (childAttributes.isRegularFile()) {
+                    listener.fileFound(file, relativePath, childAttributes);
+                }
+            }
+        } finally {
+            if (key != null) {
+                ancestors.remove(key);
+            }
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package ch.mfrey.maven.plugin.copy;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Remembers which sources were copied with which configuration, so unchanged files can be skipped by the next build.
+ * <p>
+ * The manifest has a section per resource holding a fingerprint of its configuration. When the configuration of a
+ * resource changes only its section is dropped, the sections of the other resources stay valid.
+ */
+public class IncrementalManifest {
+
+    /**
+     * The state of one source when it was last copied.
+     */
+    static class Entry {
+
+        private final String destPath;
+
+        private final String hash;
+
+        private final long lastModified;
+
+        private final long size;
+
+        Entry(final long size, final long lastModified, final String hash, final String destPath) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+            this.destPath = destPath;
+        }
+    }
+
+    /**
+     * The entries of one resource.
+     */
+    public static class Section {
+
+        private final Map<String, Entry> current = new ConcurrentHashMap<String, Entry>();
+
+        private final String fingerprint;
+
+        private final boolean hash;
+
+        private final Map<String, Entry> previous;
+
+        Section(final String fingerprint, final Map<String, Entry> previous, final boolean hash) {
+            this.fingerprint = fingerprint;
+            this.previous = previous;
+            this.hash = hash;
+        }
+
+        /**
+         * @return true if the source is unchanged since it was copied to the same, still existing, destination. The
+         *         entry is kept for the next build then.
+         */
+        public boolean isUpToDate(final File srcFile, final BasicFileAttributes attributes, final File destFile)
+                throws IOException {
+            String srcPath = srcFile.getAbsolutePath();
+            Entry entry = previous.get(srcPath);
+            if (entry == null || !entry.destPath.equals(destFile.getAbsolutePath()) || entry.size != attributes.size()
+                    || !destFile.exists()) {
+                return false;
+            }
+            long lastModified = attributes.lastModifiedTime().toMillis();
+            if (entry.lastModified == lastModified) {
+                current.put(srcPath, entry);
+                return true;
+            }
+            // Touched but maybe not changed, as after a checkout
+            if (hash && entry.hash != null && entry.hash.equals(Checksums.of(srcFile))) {
+                current.put(srcPath, new Entry(entry.size, lastModified, entry.hash, entry.destPath));
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Remembers a source which was copied successfully.
+         */
+        public void record(final File srcFile, final BasicFileAttributes attributes, final File destFile)
+                throws IOException {
+            current.put(srcFile.getAbsolutePath(), new Entry(attributes.size(), attributes.lastModifiedTime()
+                    .toMillis(), hash ? Checksums.of(srcFile) : null, destFile.getAbsolutePath()));
+        }
+    }
+
+    private static final String FILE = "file";
+
+    private static final String HEADER = "# copy-maven-plugin incremental manifest";
+
+    private static final String NONE = "-";
+
+    private static final String RESOURCE = "resource";
+
+    private static final String SEPARATOR = "\t";
+
+    /**
+     * @return a fingerprint of everything in the configuration of the resource which changes the output
+     */
+    public static String fingerprint(final Resource resource) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(resource.getCharset()).append('\n');
+        sb.append(resource.isMove()).append(resource.isNormalizePath()).append(resource.isWorkOnFullPath())
+                .append(resource.isSimultaneousReplaces()).append(resource.isStreaming())
+                .append(resource.getRegexWindow()).append(resource.getTransferStrategy()).append('\n');
+        sb.append("binary ").append(resource.getBinaryIncludes()).append('\n');
+        sb.append("text ").append(resource.getTextIncludes()).append('\n');
+        for (Replace path : resource.getPaths()) {
+            sb.append("path ").append(path.isRegex()).append(' ').append(path.getFrom()).append('\0')
+                    .append(path.getTo()).append('\n');
+        }
+        for (Replace replace : resource.getReplaces()) {
+            sb.append("replace ").append(replace.isRegex()).append(' ').append(replace.getFrom()).append('\0')
+                    .append(replace.getTo()).append('\n');
+        }
+        return Checksums.of(sb.toString());
+    }
+
+    /**
+     * Reads the manifest, a missing or unreadable one is empty.
+     */
+    public static IncrementalManifest load(final File file) {
+        IncrementalManifest manifest = new IncrementalManifest(file);
+        if (!file.isFile()) {
+            return manifest;
+        }
+        try (BufferedReader reader = new BufferedReader(newReader(file))) {
+            Map<String, Entry> entries = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(SEPARATOR);
+                if (parts.length == 3 && parts[0].equals(RESOURCE)) {
+                    entries = new LinkedHashMap<String, Entry>();
+                    manifest.fingerprints.put(parts[1], parts[2]);
+                    manifest.sections.put(parts[1], entries);
+                } else if (parts.length == 6 && parts[0].equals(FILE) && entries != null) {
+                    entries.put(parts[1], new Entry(Long.parseLong(parts[2]), Long.parseLong(parts[3]),
+                            parts[4].equals(NONE) ? null : parts[4], parts[5]));
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            // A broken manifest only costs a full copy
+            return new IncrementalManifest(file);
+        }
+        return manifest;
+    }
+
+    private static Reader newReader(final File file) throws IOException {
+        return new InputStreamReader(Files.newInputStream(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    private final File file;
+
+    private final Map<String, String> fingerprints = new LinkedHashMap<String, String>();
+
+    private final Map<String, Map<String, Entry>> sections = new LinkedHashMap<String, Map<String, Entry>>();
+
+    IncrementalManifest(final File file) {
+        this.file = file;
+    }
+
+    /**
+     * Replaces the entries of a resource by the ones recorded or confirmed during this build.
+     */
+    public void commit(final String key, final Section section) {
+        fingerprints.put(key, section.fingerprint);
+        sections.put(key, new LinkedHashMap<String, Entry>(section.current));
+    }
+
+    /**
+     * Starts a new section for a resource, with the previous entries if its configuration did not change.
+     */
+    public Section open(final String key, final String fingerprint, final boolean hash) {
+        Map<String, Entry> previous = fingerprint.equals(fingerprints.get(key)) ? sections.get(key) : null;
+        return new Section(fingerprint, previous == null ? Collections.<String, Entry> emptyMap() : previous, hash);
+    }
+
+    public void save() throws IOException {
+        FileUtils.forceMkdir(file.getAbsoluteFile().getParentFile());
+        File tmpFile = new File(file.getAbsolutePath() + ".tmp");
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(tmpFile.toPath()),
+                StandardCharsets.UTF_8))) {
+            writer.write(HEADER);
+            writer.write('\n');
+            for (Map.Entry<String, Map<String, Entry>> section : sections.entrySet()) {
+                writer.write(RESOURCE + SEPARATOR + section.getKey() + SEPARATOR
+                        + fingerprints.get(section.getKey()) + '\n');
+                for (Map.Entry<String, Entry> entry : section.getValue().entrySet()) {
+                    Entry value = entry.getValue();
+                    writer.write(FILE + SEPARATOR + entry.getKey() + SEPARATOR + value.size + SEPARATOR
+                            + value.lastModified + SEPARATOR + (value.hash == null ? NONE : value.hash) + SEPARATOR
+                            + value.destPath + '\n');
+                }
+            }
+        }
+        Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -0,0 +1,153 @@
+package ch.mfrey.maven.plugin.copy;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Aho-Corasick automaton finding any of a set of literal strings in a single pass.
+ * <p>
+ * The automaton is built as a complete transition table over the characters used by the patterns, all other
+ * characters share one symbol. Characters up to 255 are looked up in an array, so bytes passed as ISO-8859-1
+ * characters are cheap as well. Matches are selected leftmost-first: the match starting first wins, of several matches
+ * starting at the same position the pattern declared first wins.
+ */
+class LiteralAutomaton {
+
+    private static final int LATIN1 = 256;
+
+    /** Symbol index of every character up to 255, -1 if not used by a pattern. */
+    private final int[] latin1Symbols = new int[LATIN1];
+
+    /** Number of characters from the start of the match up to the current position for every state. */
+    private final int[] depth;
+
+    /** Pattern with the earliest start ending in every state, -1 if none. */
+    private final int[] match;
+
+    /** Symbol index of all other characters used by a pattern. */
+    private final Map<Character, Integer> otherSymbols = new HashMap<Character, Integer>();
+
+    private final String[] patterns;
+
+    private final int symbolCount;
+
+    private final int[][] transitions;
+
+    LiteralAutomaton(final String... patterns) {
+        this.patterns = patterns;
+        Arrays.fill(latin1Symbols, -1);
+        int symbols = 0;
+        int maxStates = 1;
+        for (String pattern : patterns) {
+            if (pattern.isEmpty()) {
+                throw new IllegalArgumentException("Patterns must not be empty");
+            }
+            maxStates += pattern.length();
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                if (symbol(c) < 0) {
+                    if (c < LATIN1) {
+                        latin1Symbols[c] = symbols++;
+                    } else {
+                        otherSymbols.put(c, symbols++);
+                    }
+                }
+            }
+        }
+        // The last symbol stands for every character no pattern contains
+        symbolCount = symbols + 1;
+
+        // Build the trie
+        List<int[]> trie = new ArrayList<int[]>(maxStates);
+        int[] depths = new int[maxStates];
+        int[] matches = new int[maxStates];
+        Arrays.fill(matches, -1);
+        trie.add(newState());
+        for (int p = 0; p < patterns.length; p++) {
+            int state = 0;
+            for (int i = 0; i < patterns[p].length(); i++) {
+                int symbol = symbol(patterns[p].charAt(i));
+                if (trie.get(state)[symbol] <= 0) {
+                    trie.get(state)[symbol] = trie.size();
+                    depths[trie.size()] = i + 1;
+                    trie.add(newState());
+                }
+                state = trie.get(state)[symbol];
+            }
+            if (matches[state] < 0) {
+                matches[state] = p;
+            }
+        }
+
+        // Breadth first: add the failure transitions and inherit the matches of the failure state
+        int[] failure = new int[trie.size()];
+        Queue<Integer> queue = new ArrayDeque<Integer>();
+        for (int symbol = 0; symbol < symbolCount; symbol++) {
+            int next = trie.get(0)[symbol];
+            if (next > 0) {
+                queue.add(next);
+            } else {
+                trie.get(0)[symbol] = 0;
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.remove();
+            if (matches[state] < 0) {
+                // A pattern ending here would start earlier than any of the failure state
+                matches[state] = matches[failure[state]];
+            }
+            for (int symbol = 0; symbol < symbolCount; symbol++) {
+                int next = trie.get(state)[symbol];
+                if (next > 0) {
+                    failure[next] = trie.get(failure[state])[symbol];
+                    queue.add(next);
+                } else {
+                    trie.get(state)[symbol] = trie.get(failure[state])[symbol];
+                }
+            }
+        }
+
+        transitions = trie.toArray(new int[trie.size()][]);
+        depth = Arrays.copyOf(depths, trie.size());
+        match = Arrays.copyOf(matches, trie.size());
+    }
+
+    int depth(final int state) {
+        return depth[state];
+    }
+
+    /**
+     * @return the index of the pattern with the earliest start ending in <code>state</code>, -1 if none
+     */
+    int match(final int state) {
+        return match[state];
+    }
+
+    private int[] newState() {
+        int[] state = new int[symbolCount];
+        Arrays.fill(state, -1);
+        return state;
+    }
+
+    int next(final int state, final char c) {
+        int symbol = symbol(c);
+        return transitions[state][symbol < 0 ? symbolCount - 1 : symbol];
+    }
+
+    String pattern(final int index) {
+        return patterns[index];
+    }
+
+    private int symbol(final char c) {
+        if (c < LATIN1) {
+            return latin1Symbols[c];
+        }
+        Integer symbol = otherSymbols.get(c);
+        return symbol == null ? -1 : symbol;
+    }
+}
@@ -0,0 +1,181 @@
+package ch.mfrey.maven.plugin.copy;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * A directory of replaced content kept across builds, like <code>~/.m2/copy-plugin-cache</code>. An entry is named
+ * by a hash of the content of the source and of the configuration of the replaces, so the same source replaced the
+ * same way is found again by any build on the machine. Entries are written to a temporary file and renamed into place,
+ * so builds running at the same time never see a partial entry. The time an entry was last used is the modification
+ * time of an empty marker next to it, as the entry itself may be hard linked to a destination whose time must not
+ * change.
+ */
+class OutputCache {
+
+    /** The suffix of the marker of an entry. */
+    private static final String USED = ".used";
+
+    /**
+     * @return a fingerprint of everything in the configuration of the resource which changes the replaced content
+     */
+    static String fingerprint(final Resource resource) {
+        return Checksums.of(SessionCache.fingerprint(resource) + '\n' + resource.isStreaming() + '\n'
+                + resource.getRegexWindow());
+    }
+
+    private final File directory;
+
+    OutputCache(final File directory) {
+        this.directory = directory;
+    }
+
+    private File entry(final String key) {
+        return new File(directory, key.substring(0, 2) + File.separator + key.substring(2));
+    }
+
+    /**
+     * Deletes the least recently used entries until the cache holds at most <code>maxSize</code> bytes.
+     *
+     * @return the number of entries deleted
+     */
+    int evict(final long maxSize) throws IOException {
+        if (!directory.isDirectory()) {
+            return 0;
+        }
+        final List<Path> files = new ArrayList<Path>();
+        final long[] size = new long[1];
+        Files.walkFileTree(directory.toPath(), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+                if (file.getFileName().toString().endsWith(USED)) {
+                    // Left behind by an entry deleted meanwhile
+                    if (!Files.exists(marked(file))) {
+                        FileUtils.deleteQuietly(file.toFile());
+                    }
+                } else if (attrs.isRegularFile()) {
+                    files.add(file);
+                    size[0] += attrs.size();
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(final Path file, final IOException exc) {
+                // Like an entry evicted by another build meanwhile
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        if (size[0] <= maxSize) {
+            return 0;
+        }
+        Collections.sort(files, new Comparator<Path>() {
+            @Override
+            public int compare(final Path o1, final Path o2) {
+                return Long.compare(lastUsed(o1.toFile()), lastUsed(o2.toFile()));
+            }
+        });
+        int deleted = 0;
+        for (int i = 0; i < files.size() && size[0] > maxSize; i++) {
+            File file = files.get(i).toFile();
+            long length = file.length();
+            if (file.delete()) {
+                FileUtils.deleteQuietly(marker(file));
+                size[0] -= length;
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * @return the entry of the key, marked as used, or null if there is none
+     */
+    File get(final String key) {
+        File entry = entry(key);
+        if (!entry.isFile()) {
+            return null;
+        }
+        markUsed(entry);
+        return entry;
+    }
+
+    File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return the key of the replaced content of the source, reading all of it
+     */
+    String key(final File srcFile, final String fingerprint) throws IOException {
+        return Checksums.of(Checksums.of(srcFile) + ' ' + fingerprint);
+    }
+
+    /**
+     * @return the time the entry was last used, or written by a build not marking it
+     */
+    private long lastUsed(final File entry) {
+        long used = marker(entry).lastModified();
+        return used != 0 ? used : entry.lastModified();
+    }
+
+    /**
+     * @return the entry of a marker
+     */
+    private Path marked(final Path marker) {
+        String name = marker.getFileName().toString();
+        return marker.resolveSibling(name.substring(0, name.length() - USED.length()));
+    }
+
+    private File marker(final File entry) {
+        return new File(entry.getPath() + USED);
+    }
+
+    /**
+     * Sets the time of the marker of the entry to now, creating it if needed. Failing to do so only makes the entry
+     * look older.
+     */
+    private void markUsed(final File entry) {
+        File marker = marker(entry);
+        try {
+            if (!marker.setLastModified(System.currentTimeMillis())) {
+                FileUtils.touch(marker);
+            }
+        } catch (IOException ex) {
+            // Like an entry evicted by another build meanwhile
+        }
+    }
+
+    /**
+     * Stores a copy of the file as the entry of the key.
+     */
+    void put(final String key, final File content) throws IOException {
+        File entry = entry(key);
+        FileUtils.forceMkdir(entry.getParentFile());
+        File tmpFile = File.createTempFile(entry.getName(), ".tmp", entry.getParentFile());
+        try {
+            Files.copy(content.toPath(), tmpFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            try {
+                Files.move(tmpFile.toPath(), entry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmpFile.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            FileUtils.deleteQuietly(tmpFile);
+        }
+        markUsed(entry);
+    }
+}
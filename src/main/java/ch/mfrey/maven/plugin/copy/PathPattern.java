@@ -0,0 +1,177 @@
+package ch.mfrey.maven.plugin.copy;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringTokenizer;
+import java.util.regex.Pattern;
+
+/**
+ * An include or exclude pattern compiled once, matching relative paths with <code>/</code> as separator the same way
+ * as <code>org.codehaus.plexus.util.SelectorUtils</code>: <code>**</code> matches any number of directories,
+ * <code>*</code> and <code>?</code> match within one name, <code>%regex[...]</code> and <code>%ant[...]</code> select
+ * the pattern syntax.
+ */
+class PathPattern {
+
+    private static final String ANT_PREFIX = "%ant[";
+
+    private static final String ANY_DIRECTORIES = "**";
+
+    private static final String ANY_DIRECTORIES_REGEX = "(?:/[^/]+)*";
+
+    private static final String REGEX_PREFIX = "%regex[";
+
+    private static final String SUFFIX = "]";
+
+    private static boolean isHandler(final String pattern, final String prefix) {
+        return pattern.length() > prefix.length() + SUFFIX.length() && pattern.startsWith(prefix)
+                && pattern.endsWith(SUFFIX);
+    }
+
+    /**
+     * Splits comma separated patterns, trims them and completes directory patterns with <code>**</code>.
+     */
+    static List<PathPattern> parse(final List<String> patterns) {
+        List<PathPattern> result = new ArrayList<PathPattern>();
+        for (String pattern : patterns) {
+            StringTokenizer tokenizer = new StringTokenizer(pattern, ",");
+            while (tokenizer.hasMoreTokens()) {
+                String token = tokenizer.nextToken().trim();
+                if (token.endsWith(File.separator)) {
+                    token += "**";
+                }
+                result.add(new PathPattern(token));
+            }
+        }
+        return result;
+    }
+
+    /** Absolute patterns never match the relative paths. */
+    private final boolean absolute;
+
+    /** Matches the directories whose whole content matches if the pattern ends with <code>/**</code>. */
+    private final Pattern directoryPattern;
+
+    /** Matches a whole path. */
+    private final Pattern pattern;
+
+    /** Is this a <code>%regex[...]</code> pattern? */
+    private final boolean regex;
+
+    /** Name patterns up to the first <code>**</code>. */
+    private final List<Pattern> startPatterns = new ArrayList<Pattern>();
+
+    /** Does the pattern contain <code>**</code>? */
+    private final boolean unbounded;
+
+    PathPattern(final String source) {
+        String ant = source;
+        if (isHandler(source, REGEX_PREFIX)) {
+            String expression = source.substring(REGEX_PREFIX.length(), source.length() - SUFFIX.length());
+            pattern = Pattern.compile(expression.replace("/", "[\\\\/]"));
+            regex = true;
+            absolute = false;
+            unbounded = true;
+            directoryPattern = null;
+            return;
+        } else if (isHandler(source, ANT_PREFIX)) {
+            ant = source.substring(ANT_PREFIX.length(), source.length() - SUFFIX.length());
+        }
+        if (File.separatorChar != '/') {
+            ant = ant.replace(File.separatorChar, '/');
+        }
+        regex = false;
+        absolute = ant.startsWith("/");
+
+        List<String> tokens = new ArrayList<String>();
+        StringTokenizer tokenizer = new StringTokenizer(ant, "/");
+        while (tokenizer.hasMoreTokens()) {
+            tokens.add(tokenizer.nextToken());
+        }
+        // Every name is matched with a leading separator, so ** can match nothing at all
+        StringBuilder expression = new StringBuilder();
+        boolean wildcard = false;
+        for (String token : tokens) {
+            if (token.equals(ANY_DIRECTORIES)) {
+                expression.append(ANY_DIRECTORIES_REGEX);
+                wildcard = true;
+            } else {
+                String name = toRegex(token);
+                expression.append('/').append(name);
+                if (!wildcard) {
+                    startPatterns.add(Pattern.compile(name));
+                }
+            }
+        }
+        pattern = Pattern.compile(expression.toString());
+        unbounded = wildcard;
+        if (!tokens.isEmpty() && tokens.get(tokens.size() - 1).equals(ANY_DIRECTORIES)) {
+            directoryPattern = Pattern.compile(expression.substring(0, expression.length()
+                    - ANY_DIRECTORIES_REGEX.length()));
+        } else {
+            directoryPattern = null;
+        }
+    }
+
+    /**
+     * @return true if a path below <code>directory</code> could match, like
+     *         <code>SelectorUtils.matchPatternStart</code>
+     */
+    boolean couldMatchBelow(final String directory) {
+        if (regex || absolute) {
+            return regex;
+        }
+        StringTokenizer tokenizer = new StringTokenizer(directory, "/");
+        int i = 0;
+        while (tokenizer.hasMoreTokens()) {
+            if (i == startPatterns.size()) {
+                // Names left, only a ** can still take them
+                return unbounded;
+            }
+            if (!startPatterns.get(i++).matcher(tokenizer.nextToken()).matches()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if every path below <code>directory</code> matches
+     */
+    boolean matchesAllBelow(final String directory) {
+        return directoryPattern != null && !absolute && directoryPattern.matcher(prefixed(directory)).matches();
+    }
+
+    boolean matches(final String path) {
+        if (regex) {
+            return pattern.matcher(path).matches();
+        }
+        return !absolute && pattern.matcher(prefixed(path)).matches();
+    }
+
+    private String prefixed(final String path) {
+        return path.isEmpty() ? path : "/" + path;
+    }
+
+    private String toRegex(final String name) {
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '*' || c == '?') {
+                if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                regex.append(c == '*' ? "[^/]*" : "[^/]");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return regex.toString();
+    }
+}
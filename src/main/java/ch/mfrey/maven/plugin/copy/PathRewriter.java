@@ -0,0 +1,183 @@
+package ch.mfrey.maven.plugin.copy;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.FilenameUtils;
+
+/**
+ * Applies the <code>paths</code> of a {@link Resource} to a path. The rules, including their normalized variants, are
+ * prepared once per resource instead of once per file.
+ * <p>
+ * Instances are immutable apart from the timing counters and can be shared between threads.
+ */
+public class PathRewriter {
+
+    /**
+     * One prepared path rule.
+     */
+    private static class Rule {
+
+        private final String from;
+
+        private final Pattern pattern;
+
+        private final String to;
+
+        Rule(final String from, final String to, final boolean regex) {
+            this.from = from;
+            this.to = to;
+            this.pattern = regex ? Pattern.compile(from) : null;
+        }
+
+        String apply(final String path) {
+            return pattern == null ? path.replace(from, to) : pattern.matcher(path).replaceAll(to);
+        }
+
+        /**
+         * @return true if no match can contain a separator or depend on what is around it
+         */
+        boolean isSegmentLocal() {
+            if (pattern == null) {
+                return !from.isEmpty() && from.indexOf('/') < 0 && from.indexOf(File.separatorChar) < 0;
+            }
+            return PathRewriter.isSegmentLocal(from);
+        }
+    }
+
+    /** Escaped letters standing for characters or classes without a separator. */
+    private static final String LOCAL_ESCAPES = "adefnrstw";
+
+    private static boolean covers(final char low, final char high) {
+        return low <= '/' && '/' <= high || low <= File.separatorChar && File.separatorChar <= high;
+    }
+
+    /**
+     * Tells regexes which can neither match a separator nor depend on the text around a match: no dots, anchors,
+     * boundaries, look-arounds, negated classes or classes containing a separator, and no match of the empty text.
+     *
+     * @return true if the regex only matches within a segment of a path, independent of the other segments
+     */
+    static boolean isSegmentLocal(final String regex) {
+        boolean inClass = false;
+        int classStart = 0;
+        char previous = 0;
+        boolean previousLetter = false;
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                if (++i >= regex.length()) {
+                    return false;
+                }
+                c = regex.charAt(i);
+                if (c == '/' || c == '\\' || c == File.separatorChar
+                        || Character.isLetterOrDigit(c) && LOCAL_ESCAPES.indexOf(c) < 0) {
+                    return false;
+                }
+                // An escaped letter like \t is not the character it stands for, no range may start there
+                previous = c;
+                previousLetter = Character.isLetter(c);
+                continue;
+            } else if (inClass) {
+                if (c == ']' && i > classStart) {
+                    inClass = false;
+                    continue;
+                } else if (c == '[' || c == '&' || c == '/' || c == File.separatorChar) {
+                    return false;
+                } else if (c == '-' && i > classStart && i + 1 < regex.length() && regex.charAt(i + 1) != ']') {
+                    // A range like !-~ includes the separator
+                    if (previousLetter) {
+                        return false;
+                    }
+                    char high = regex.charAt(i + 1);
+                    if (high == '\\') {
+                        if (i + 2 >= regex.length() || Character.isLetterOrDigit(regex.charAt(i + 2))) {
+                            return false;
+                        }
+                        high = regex.charAt(i + 2);
+                    }
+                    if (covers(previous, high)) {
+                        return false;
+                    }
+                }
+            } else if (c == '[') {
+                if (i + 1 < regex.length() && regex.charAt(i + 1) == '^') {
+                    return false;
+                }
+                inClass = true;
+                classStart = i + 1;
+                continue;
+            } else if (c == '(' && i + 1 < regex.length() && regex.charAt(i + 1) == '?') {
+                if (!regex.startsWith("(?:", i) && !(regex.startsWith("(?<", i) && i + 3 < regex.length()
+                        && Character.isLetter(regex.charAt(i + 3)))) {
+                    return false;
+                }
+            } else if (c == '/' || c == '.' || c == '^' || c == '$' || c == File.separatorChar) {
+                return false;
+            }
+            previous = c;
+            previousLetter = false;
+        }
+        // Whatever matches the empty text also matches next to a separator
+        return !inClass && !Pattern.compile(regex).matcher("").matches();
+    }
+
+    private final long compileNanos;
+
+    private final AtomicLong matchNanos = new AtomicLong();
+
+    private final List<Rule> rules = new ArrayList<Rule>();
+
+    public PathRewriter(final List<Replace> paths, final boolean normalize) {
+        long start = System.nanoTime();
+        for (Replace rename : paths) {
+            if (!rename.getFrom().equals(rename.getTo())) {
+                if (normalize) {
+                    rules.add(new Rule(FilenameUtils.normalize(rename.getFrom(), true), FilenameUtils.normalize(
+                            rename.getTo(), true), rename.isRegex()));
+                } else {
+                    rules.add(new Rule(rename.getFrom(), rename.getTo(), rename.isRegex()));
+                }
+            }
+        }
+        compileNanos = System.nanoTime() - start;
+    }
+
+    public long getCompileNanos() {
+        return compileNanos;
+    }
+
+    public long getMatchNanos() {
+        return matchNanos.get();
+    }
+
+    public int getRuleCount() {
+        return rules.size();
+    }
+
+    /**
+     * @return true if every rule only matches within a segment, so rewriting the directory and the name of a path
+     *         separately gives the same result as rewriting the whole path
+     */
+    public boolean isSplittable() {
+        for (Rule rule : rules) {
+            if (!rule.isSegmentLocal()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public String rewrite(final String path) {
+        long start = System.nanoTime();
+        String result = path;
+        for (Rule rule : rules) {
+            result = rule.apply(result);
+        }
+        matchNanos.addAndGet(System.nanoTime() - start);
+        return result;
+    }
+}
@@ -0,0 +1,19 @@
+package ch.mfrey.maven.plugin.copy;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+
+/**
+ * Computes what the copy goal would do with the same configuration and writes the plan to the <code>planFile</code>,
+ * without writing any other file.
+ */
+@Mojo(name = "plan", threadSafe = true)
+public class PlanMojo extends CopyMojo {
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        setDryRun(true);
+        super.execute();
+    }
+}
@@ -0,0 +1,253 @@
+package ch.mfrey.maven.plugin.copy;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Tells from the raw bytes of a file whether any replace could match, so files without a hit can be copied without
+ * decoding them. Every replace contributes a needle which occurs in every text it matches: the <code>from</code> of a
+ * literal, the longest literal a regex requires. If one of the replaces has no such needle, there is no prefilter.
+ * <p>
+ * A file without any needle stays the same through all replaces: the first replace does not change it, so neither
+ * does the next one.
+ */
+class Prefilter {
+
+    /** Inline flags changing how literal characters match. */
+    private static final Pattern CASE_OR_COMMENTS = Pattern.compile("\\(\\?[a-zA-Z-]*[ixU]");
+
+    private static final ThreadLocal<ByteBuffer> BUFFER = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocate(ByteReplacer.BUFFER_SIZE);
+        }
+    };
+
+    /**
+     * @return the prefilter for the replaces, null if a replace could match without any literal or the needles can
+     *         not be searched for in the bytes of the charset
+     */
+    static Prefilter of(final List<Replace> replaces, final Charset charset) {
+        if (replaces.isEmpty() || !ByteReplacer.isAsciiSafe(charset)) {
+            return null;
+        }
+        Set<String> needles = new LinkedHashSet<String>();
+        for (Replace replace : replaces) {
+            String needle = replace.isRegex() ? requiredLiteral(replace.getFrom()) : replace.getFrom();
+            if (needle == null || needle.isEmpty() || !charset.newEncoder().canEncode(needle)) {
+                return null;
+            }
+            // The bytes as ISO-8859-1 characters for the automaton
+            needles.add(new String(needle.getBytes(charset), StandardCharsets.ISO_8859_1));
+        }
+        return new Prefilter(new ArrayList<String>(needles));
+    }
+
+    /**
+     * @return the longest literal every match of the regex contains, null if none is found
+     */
+    static String requiredLiteral(final String regex) {
+        if (regex.contains("\\Q") || CASE_OR_COMMENTS.matcher(regex).find()) {
+            return null;
+        }
+        String best = "";
+        StringBuilder run = new StringBuilder();
+        int i = 0;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                if (i + 1 >= regex.length()) {
+                    return null;
+                }
+                char escaped = regex.charAt(i + 1);
+                if (Character.isLetterOrDigit(escaped)) {
+                    // A class, an anchor, a back reference or a character code
+                    best = longer(best, run);
+                    i = skipEscape(regex, i);
+                    i = skipQuantifier(regex, i);
+                    continue;
+                }
+                run.append(escaped);
+                i += 2;
+            } else if (c == '[' || c == '(') {
+                best = longer(best, run);
+                i = c == '[' ? skipClass(regex, i) : skipGroup(regex, i);
+                if (i < 0) {
+                    return null;
+                }
+                i = skipQuantifier(regex, i);
+                continue;
+            } else if (c == '|') {
+                // Any alternative could match
+                return null;
+            } else if (c == '.' || c == '^' || c == '$') {
+                best = longer(best, run);
+                i = skipQuantifier(regex, i + 1);
+                continue;
+            } else {
+                run.append(c);
+                i++;
+            }
+            // The literal just added may be repeated or optional
+            if (i < regex.length() && "?*+{".indexOf(regex.charAt(i)) >= 0) {
+                if (regex.charAt(i) != '+') {
+                    run.setLength(run.length() - 1);
+                }
+                best = longer(best, run);
+                i = skipQuantifier(regex, i);
+            }
+        }
+        best = longer(best, run);
+        return best.isEmpty() ? null : best;
+    }
+
+    private static String longer(final String best, final StringBuilder run) {
+        String result = run.length() > best.length() ? run.toString() : best;
+        run.setLength(0);
+        return result;
+    }
+
+    /**
+     * @return the index after the character class starting at <code>start</code>, -1 if it does not end
+     */
+    private static int skipClass(final String regex, final int start) {
+        int i = start + 1;
+        if (i < regex.length() && regex.charAt(i) == '^') {
+            i++;
+        }
+        if (i < regex.length() && regex.charAt(i) == ']') {
+            i++;
+        }
+        int depth = 1;
+        while (i < regex.length()) {
+            char c = regex.charAt(i++);
+            if (c == '\\') {
+                i++;
+            } else if (c == '[') {
+                depth++;
+            } else if (c == ']' && --depth == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the index after the escape sequence starting at <code>start</code>
+     */
+    private static int skipEscape(final String regex, final int start) {
+        char c = regex.charAt(start + 1);
+        int i = start + 2;
+        if (i < regex.length() && (regex.charAt(i) == '{' && "pPxN".indexOf(c) >= 0 || regex.charAt(i) == '<'
+                && c == 'k')) {
+            int end = regex.indexOf(regex.charAt(i) == '{' ? '}' : '>', i);
+            return end < 0 ? regex.length() : end + 1;
+        }
+        int digits = 0;
+        if (c == 'x') {
+            digits = 2;
+        } else if (c == 'u') {
+            digits = 4;
+        } else if (c == 'c' || c == 'p' || c == 'P') {
+            digits = 1;
+        } else if (c >= '0' && c <= '9') {
+            digits = c == '0' ? 3 : regex.length();
+            while (digits > 0 && i < regex.length() && Character.isDigit(regex.charAt(i))) {
+                i++;
+                digits--;
+            }
+            return i;
+        }
+        return Math.min(regex.length(), i + digits);
+    }
+
+    /**
+     * @return the index after the group starting at <code>start</code>, -1 if it does not end
+     */
+    private static int skipGroup(final String regex, final int start) {
+        int depth = 0;
+        int i = start;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i += 2;
+                continue;
+            } else if (c == '[') {
+                i = skipClass(regex, i);
+                if (i < 0) {
+                    return -1;
+                }
+                continue;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')' && --depth == 0) {
+                return i + 1;
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the index after the quantifier at <code>start</code> including a lazy or possessive suffix, or
+     *         <code>start</code> if there is none
+     */
+    private static int skipQuantifier(final String regex, final int start) {
+        int i = start;
+        if (i >= regex.length()) {
+            return i;
+        }
+        char c = regex.charAt(i);
+        if (c == '{') {
+            int end = regex.indexOf('}', i);
+            i = end < 0 ? regex.length() : end + 1;
+        } else if (c == '?' || c == '*' || c == '+') {
+            i++;
+        } else {
+            return i;
+        }
+        if (i < regex.length() && (regex.charAt(i) == '?' || regex.charAt(i) == '+')) {
+            i++;
+        }
+        return i;
+    }
+
+    private final LiteralAutomaton automaton;
+
+    Prefilter(final List<String> needles) {
+        automaton = new LiteralAutomaton(needles.toArray(new String[needles.size()]));
+    }
+
+    /**
+     * @return true if the file contains at least one of the needles
+     */
+    boolean matches(final File file) throws IOException {
+        ByteBuffer buffer = BUFFER.get();
+        byte[] bytes = buffer.array();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            int state = 0;
+            buffer.clear();
+            int read;
+            while ((read = channel.read(buffer)) != -1) {
+                for (int i = 0; i < read; i++) {
+                    state = automaton.next(state, (char) (bytes[i] & 0xFF));
+                    if (automaton.match(state) >= 0) {
+                        return true;
+                    }
+                }
+                buffer.clear();
+            }
+        }
+        return false;
+    }
+}
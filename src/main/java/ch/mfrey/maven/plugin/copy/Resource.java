@@ -13,21 +13,57 @@ public class Resource extends FileSet {
      */
     private static final long serialVersionUID = 1L;
 
+    /**
+     * A zip or jar file the files are written into instead of the working directory.
+     */
+    @Parameter(required = false)
+    private String archive;
+
+    /**
+     * Files always copied without replaces.
+     */
+    @Parameter(required = false)
+    private List<String> binaryIncludes;
+
     @Parameter(defaultValue = "UTF-8")
     private String charset;
 
+    /**
+     * Which empty directories are deleted afterwards.
+     */
+    @Parameter(defaultValue = "AUTO")
+    private EmptyDirCleanup cleanupEmptyDirs = EmptyDirCleanup.AUTO;
+
+    /**
+     * Files of at least this many bytes only get the changed blocks of an existing destination written, 0 never does.
+     */
+    @Parameter(defaultValue = "0")
+    private long deltaThreshold = 0;
+
     @Parameter(required = false)
     private String id;
 
     @Parameter(defaultValue = "false")
     private boolean move = false;
 
+    /**
+     * Files of at least this many bytes are read through memory mapped windows, 0 never maps.
+     */
+    @Parameter(defaultValue = "0")
+    private long mmapThreshold = 0;
+
     @Parameter(defaultValue = "true")
     private boolean normalizePath = true;
 
     @Parameter(required = false)
     private List<Replace> paths;
 
+    /**
+     * Number of characters a regex replace may look at around a match when streaming.
+     */
+    @Parameter(defaultValue = "8192")
+    private int regexWindow = 8192;
+
     /**
      * Replace existing files?
      */
@@ -37,9 +73,63 @@ public class Resource extends FileSet {
     @Parameter(required = false)
     private List<Replace> replaces;
 
+    /**
+     * Apply the literal replaces in one pass where a match is never searched for in replaced text?
+     */
+    @Parameter(defaultValue = "false")
+    private boolean simultaneousReplaces = false;
+
+    /**
+     * Leave destinations which already have the new content untouched?
+     */
+    @Parameter(defaultValue = "false")
+    private boolean skipUnchanged = false;
+
+    /**
+     * Stream the content through the replaces instead of loading whole files into memory?
+     */
+    @Parameter(defaultValue = "false")
+    private boolean streaming = false;
+
+    /**
+     * The directory mirrored by the resource: destinations which already match their source are left alone, and the
+     * files below it which are no destination of a source are deleted.
+     */
+    @Parameter(required = false)
+    private String syncDirectory;
+
+    /**
+     * Compare the content instead of the size and modification time when syncing?
+     */
+    @Parameter(defaultValue = "false")
+    private boolean syncHash = false;
+
+    /**
+     * Files always replaced, even if they look binary.
+     */
+    @Parameter(required = false)
+    private List<String> textIncludes;
+
+    /**
+     * Number of files copied in parallel, defaults to the <code>threads</code> of the plugin.
+     */
+    @Parameter(required = false)
+    private Integer threads;
+
+    /**
+     * How files without replaces are copied.
+     */
+    @Parameter(defaultValue = "COPY")
+    private TransferStrategy transferStrategy = TransferStrategy.COPY;
+
     @Parameter(defaultValue = "false")
     private boolean workOnFullPath = false;
 
+    public Resource addBinaryInclude(final String val) {
+        getBinaryIncludes().add(val);
+        return this;
+    }
+
     public Resource addPath(final Replace val) {
         getPaths().add(val);
         return this;
@@ -50,6 +140,22 @@ public class Resource extends FileSet {
         return this;
     }
 
+    public Resource addTextInclude(final String val) {
+        getTextIncludes().add(val);
+        return this;
+    }
+
+    public String getArchive() {
+        return archive;
+    }
+
+    public List<String> getBinaryIncludes() {
+        if (binaryIncludes == null) {
+            binaryIncludes = new ArrayList<String>();
+        }
+        return binaryIncludes;
+    }
+
     public String getCharset() {
         if (charset == null) {
             charset = "UTF-8";
@@ -57,6 +163,17 @@ public class Resource extends FileSet {
         return charset;
     }
 
+    public EmptyDirCleanup getCleanupEmptyDirs() {
+        if (cleanupEmptyDirs == null) {
+            cleanupEmptyDirs = EmptyDirCleanup.AUTO;
+        }
+        return cleanupEmptyDirs;
+    }
+
+    public long getDeltaThreshold() {
+        return deltaThreshold;
+    }
+
     public String getId() {
         if (id == null) {
             id = "undefined";
@@ -64,6 +181,10 @@ public class Resource extends FileSet {
         return id;
     }
 
+    public long getMmapThreshold() {
+        return mmapThreshold;
+    }
+
     public List<Replace> getPaths() {
         if (paths == null) {
             paths = new ArrayList<Replace>();
@@ -71,6 +192,10 @@ public class Resource extends FileSet {
         return paths;
     }
 
+    public int getRegexWindow() {
+        return regexWindow;
+    }
+
     public List<Replace> getReplaces() {
         if (replaces == null) {
             replaces = new ArrayList<Replace>();
@@ -78,6 +203,28 @@ public class Resource extends FileSet {
         return replaces;
     }
 
+    public String getSyncDirectory() {
+        return syncDirectory;
+    }
+
+    public List<String> getTextIncludes() {
+        if (textIncludes == null) {
+            textIncludes = new ArrayList<String>();
+        }
+        return textIncludes;
+    }
+
+    public Integer getThreads() {
+        return threads;
+    }
+
+    public TransferStrategy getTransferStrategy() {
+        if (transferStrategy == null) {
+            transferStrategy = TransferStrategy.COPY;
+        }
+        return transferStrategy;
+    }
+
     public boolean isMove() {
         return move;
     }
@@ -86,19 +233,62 @@ public class Resource extends FileSet {
         return normalizePath;
     }
 
+    /**
+     * @return true if existing files are replaced, always for a resource with a <code>syncDirectory</code>
+     */
     public boolean isReplaceExisting() {
-        return replaceExisting;
+        return replaceExisting || syncDirectory != null;
+    }
+
+    public boolean isSimultaneousReplaces() {
+        return simultaneousReplaces;
+    }
+
+    /**
+     * @return true if destinations with the new content are left untouched, always for a resource with a
+     *         <code>syncDirectory</code>
+     */
+    public boolean isSkipUnchanged() {
+        return skipUnchanged || syncDirectory != null;
+    }
+
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    public boolean isSyncHash() {
+        return syncHash;
     }
 
     public boolean isWorkOnFullPath() {
         return workOnFullPath;
     }
 
+    public Resource setArchive(final String archive) {
+        this.archive = archive;
+        return this;
+    }
+
+    public Resource setBinaryIncludes(final List<String> binaryIncludes) {
+        this.binaryIncludes = binaryIncludes;
+        return this;
+    }
+
     public Resource setCharset(final String charset) {
         this.charset = charset;
         return this;
     }
 
+    public Resource setCleanupEmptyDirs(final EmptyDirCleanup cleanupEmptyDirs) {
+        this.cleanupEmptyDirs = cleanupEmptyDirs;
+        return this;
+    }
+
+    public Resource setDeltaThreshold(final long deltaThreshold) {
+        this.deltaThreshold = deltaThreshold;
+        return this;
+    }
+
     public Resource setId(final String id) {
         this.id = id;
         return this;
@@ -109,6 +299,11 @@ public class Resource extends FileSet {
         return this;
     }
 
+    public Resource setMmapThreshold(final long mmapThreshold) {
+        this.mmapThreshold = mmapThreshold;
+        return this;
+    }
+
     public Resource setNormalizePath(final boolean normalizePath) {
         this.normalizePath = normalizePath;
         return this;
@@ -119,6 +314,11 @@ public class Resource extends FileSet {
         return this;
     }
 
+    public Resource setRegexWindow(final int regexWindow) {
+        this.regexWindow = regexWindow;
+        return this;
+    }
+
     public Resource setReplaceExisting(final boolean replaceExisting) {
         this.replaceExisting = replaceExisting;
         return this;
@@ -129,6 +329,46 @@ public class Resource extends FileSet {
         return this;
     }
 
+    public Resource setSimultaneousReplaces(final boolean simultaneousReplaces) {
+        this.simultaneousReplaces = simultaneousReplaces;
+        return this;
+    }
+
+    public Resource setSkipUnchanged(final boolean skipUnchanged) {
+        this.skipUnchanged = skipUnchanged;
+        return this;
+    }
+
+    public Resource setStreaming(final boolean streaming) {
+        this.streaming = streaming;
+        return this;
+    }
+
+    public Resource setSyncDirectory(final String syncDirectory) {
+        this.syncDirectory = syncDirectory;
+        return this;
+    }
+
+    public Resource setSyncHash(final boolean syncHash) {
+        this.syncHash = syncHash;
+        return this;
+    }
+
+    public Resource setTextIncludes(final List<String> textIncludes) {
+        this.textIncludes = textIncludes;
+        return this;
+    }
+
+    public Resource setThreads(final Integer threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    public Resource setTransferStrategy(final TransferStrategy transferStrategy) {
+        this.transferStrategy = transferStrategy;
+        return this;
+    }
+
     public Resource setWorkOnFullPath(final boolean workOnFullPath) {
         this.workOnFullPath = workOnFullPath;
         return this;
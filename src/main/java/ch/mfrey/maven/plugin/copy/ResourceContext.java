@@ -0,0 +1,345 @@
+package ch.mfrey.maven.plugin.copy;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A resource being copied with its compiled rules and the state collected while copying it.
+ */
+class ResourceContext {
+
+    /**
+     * A file found by the scanner, kept to be handed to a listener later.
+     */
+    static class FoundFile {
+
+        private final BasicFileAttributes attributes;
+
+        private final Path file;
+
+        private final String relativePath;
+
+        FoundFile(final Path file, final String relativePath, final BasicFileAttributes attributes) {
+            this.file = file;
+            this.relativePath = relativePath;
+            this.attributes = attributes;
+        }
+
+        BasicFileAttributes getAttributes() {
+            return attributes;
+        }
+
+        Path getFile() {
+            return file;
+        }
+
+        String getRelativePath() {
+            return relativePath;
+        }
+    }
+
+    /** The number of source directories whose destination directory is kept. */
+    static final int DESTINATION_DIRS = 1024;
+
+    /** Tells the files copied without replaces. */
+    private final BinaryDetector binaryDetector;
+
+    /** Applies the replaces to the encoded bytes, null if they have to see characters. */
+    private final ByteReplacer byteReplacer;
+
+    /** The cache shared with the other executions of the build, null if there is none. */
+    private SessionCache cache;
+
+    /** The fingerprint of the replaces the content is cached for. */
+    private String cacheFingerprint;
+
+    /** The absolute paths of the destinations which did not exist before the resource wrote them. */
+    private final Set<String> created = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The destination directories of the last source directories used, including the trailing separator. Null if the
+     * path rules can not rewrite the directory and the name of a file separately.
+     */
+    private final Map<String, String> destinationDirs;
+
+    /** The parent directories of the sources moved away. */
+    private final Set<File> emptied = ConcurrentHashMap.newKeySet();
+
+    /** The files left to copy if they were already found, null to scan the working directory. */
+    private List<FoundFile> found;
+
+    private final ResourceMetrics metrics;
+
+    /** The replaced content kept across builds, null if there is none. */
+    private OutputCache outputCache;
+
+    /** The fingerprint of the replaces the content is kept for across builds. */
+    private String outputFingerprint;
+
+    /** The destinations of the sources taken from a plan, null to rewrite the paths. */
+    private Map<String, String> planned;
+
+    /** Tells the files no replace can match, null if there is none. */
+    private final Prefilter prefilter;
+
+    private final ContentReplacer replacer;
+
+    private final Resource resource;
+
+    private final PathRewriter rewriter;
+
+    private final FileScanner scanner;
+
+    private IncrementalManifest.Section section;
+
+    private final int threads;
+
+    /** The normalized absolute paths of the sources and destinations of a synced resource, null if it is not synced. */
+    private final Set<String> synced;
+
+    /** The number of destinations which already had the new content. */
+    private final AtomicInteger untouched = new AtomicInteger();
+
+    private final File workingDir;
+
+    ResourceContext(final Resource resource, final File workingDir, final PathRewriter rewriter,
+            final ContentReplacer replacer, final int threads, final ResourceMetrics metrics) {
+        this.resource = resource;
+        this.metrics = metrics;
+        this.workingDir = workingDir;
+        this.rewriter = rewriter;
+        this.replacer = replacer;
+        this.threads = threads;
+        this.scanner = new FileScanner(resource.getIncludes(), resource.getExcludes());
+        Charset charset = Charset.forName(resource.getCharset());
+        this.byteReplacer = ByteReplacer.of(replacer, charset);
+        this.prefilter = Prefilter.of(resource.getReplaces(), charset);
+        this.binaryDetector = new BinaryDetector(resource.getBinaryIncludes(), resource.getTextIncludes(), charset);
+        this.synced = resource.getSyncDirectory() != null ? ConcurrentHashMap.<String> newKeySet() : null;
+        this.destinationDirs = rewriter.getRuleCount() > 0 && rewriter.isSplittable() ? Collections
+                .synchronizedMap(new LinkedHashMap<String, String>(16, 0.75f, true) {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    protected boolean removeEldestEntry(final Map.Entry<String, String> eldest) {
+                        return size() > DESTINATION_DIRS;
+                    }
+                }) : null;
+    }
+
+    /**
+     * Remembers a destination the resource is going to write which does not exist yet, so the scan does not find it
+     * as a source afterwards.
+     */
+    void addCreated(final File destFile) {
+        created.add(destFile.getAbsolutePath());
+    }
+
+    /**
+     * Remembers that a file or directory was moved away from <code>directory</code>.
+     */
+    void addEmptied(final File directory) {
+        emptied.add(directory);
+    }
+
+    BinaryDetector getBinaryDetector() {
+        return binaryDetector;
+    }
+
+    ByteReplacer getByteReplacer() {
+        return byteReplacer;
+    }
+
+    SessionCache getCache() {
+        return cache;
+    }
+
+    String getCacheFingerprint() {
+        return cacheFingerprint;
+    }
+
+    /**
+     * @return the destination directory of <code>sourceDir</code> including the trailing separator, null if it is
+     *         not known
+     */
+    String getDestinationDir(final String sourceDir) {
+        return destinationDirs.get(sourceDir);
+    }
+
+    Set<File> getEmptied() {
+        return emptied;
+    }
+
+    void addUntouched() {
+        untouched.incrementAndGet();
+    }
+
+    /**
+     * @return true if the file is a source or a destination of the synced resource
+     */
+    boolean isKept(final File file) {
+        return synced.contains(normalize(file));
+    }
+
+    /**
+     * @return true if the resource has a sync directory
+     */
+    boolean isSynced() {
+        return synced != null;
+    }
+
+    /**
+     * @return true if the destination directories can be kept per source directory
+     */
+    boolean hasDestinationDirs() {
+        return destinationDirs != null;
+    }
+
+    /**
+     * @return the destination planned for the file, null if there is no plan
+     */
+    String getPlannedPath(final File file) {
+        return planned == null ? null : planned.get(file.getAbsolutePath());
+    }
+
+    ResourceMetrics getMetrics() {
+        return metrics;
+    }
+
+    OutputCache getOutputCache() {
+        return outputCache;
+    }
+
+    String getOutputFingerprint() {
+        return outputFingerprint;
+    }
+
+    Prefilter getPrefilter() {
+        return prefilter;
+    }
+
+    ContentReplacer getReplacer() {
+        return replacer;
+    }
+
+    Resource getResource() {
+        return resource;
+    }
+
+    PathRewriter getRewriter() {
+        return rewriter;
+    }
+
+    FileScanner getScanner() {
+        return scanner;
+    }
+
+    IncrementalManifest.Section getSection() {
+        return section;
+    }
+
+    int getThreads() {
+        return threads;
+    }
+
+    int getUntouched() {
+        return untouched.get();
+    }
+
+    File getWorkingDir() {
+        return workingDir;
+    }
+
+    /**
+     * Remembers a source or destination of the synced resource, so it is not deleted as stale.
+     */
+    void keep(final File file) {
+        synced.add(normalize(file));
+    }
+
+    private String normalize(final File file) {
+        return file.getAbsoluteFile().toPath().normalize().toString();
+    }
+
+    /**
+     * @return the path of a file below the working directory relative to it, separated by <code>/</code>
+     */
+    String relativize(final File file) {
+        String path = workingDir.getAbsoluteFile().toPath().relativize(file.getAbsoluteFile().toPath()).toString();
+        return File.separatorChar == '/' ? path : path.replace(File.separatorChar, '/');
+    }
+
+    /**
+     * Hands the files of the resource to the listener, the ones found before or the ones found by scanning. The files
+     * the resource created since the scan started are left out, like they were by scanning before copying. The time
+     * spent scanning, outside of the listener, is added to the metrics.
+     */
+    void scan(final FileScanner.Listener listener) throws IOException {
+        if (found == null) {
+            final long[] inListener = new long[1];
+            long start = System.nanoTime();
+            FileScanner.Listener timed = new FileScanner.Listener() {
+                @Override
+                public void fileFound(final Path file, final String relativePath,
+                        final BasicFileAttributes attributes) throws IOException {
+                    if (created.contains(file.toFile().getAbsolutePath())) {
+                        return;
+                    }
+                    long listenerStart = System.nanoTime();
+                    metrics.addMatched();
+                    try {
+                        listener.fileFound(file, relativePath, attributes);
+                    } finally {
+                        inListener[0] += System.nanoTime() - listenerStart;
+                    }
+                }
+            };
+            if (cache != null) {
+                scanner.scan(workingDir.toPath(), timed, cache);
+            } else {
+                scanner.scan(workingDir.toPath(), timed);
+            }
+            metrics.addScanNanos(System.nanoTime() - start - inListener[0]);
+            return;
+        }
+        for (FoundFile file : found) {
+            listener.fileFound(file.getFile(), file.getRelativePath(), file.getAttributes());
+        }
+    }
+
+    void putDestinationDir(final String sourceDir, final String destinationDir) {
+        destinationDirs.put(sourceDir, destinationDir);
+    }
+
+    void setCache(final SessionCache cache) {
+        this.cache = cache;
+        this.cacheFingerprint = SessionCache.fingerprint(resource);
+    }
+
+    void setFound(final List<FoundFile> found) {
+        this.found = found;
+    }
+
+    void setOutputCache(final OutputCache outputCache) {
+        this.outputCache = outputCache;
+        this.outputFingerprint = OutputCache.fingerprint(resource);
+    }
+
+    void setPlanned(final Map<String, String> planned) {
+        this.planned = planned;
+    }
+
+    void setSection(final IncrementalManifest.Section section) {
+        this.section = section;
+    }
+}
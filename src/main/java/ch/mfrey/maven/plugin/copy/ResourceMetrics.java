@@ -0,0 +1,250 @@
+package ch.mfrey.maven.plugin.copy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and timers of copying one resource. The counters can be updated by several threads, the phase times of the
+ * files are summed up and may exceed the time of the resource when copying in parallel.
+ */
+class ResourceMetrics {
+
+    /**
+     * The time it took to copy one file.
+     */
+    static class FileTime {
+
+        private final long nanos;
+
+        private final String path;
+
+        FileTime(final String path, final long nanos) {
+            this.path = path;
+            this.nanos = nanos;
+        }
+
+        long getNanos() {
+            return nanos;
+        }
+
+        String getPath() {
+            return path;
+        }
+    }
+
+    private static final Comparator<FileTime> FASTEST_FIRST = new Comparator<FileTime>() {
+        @Override
+        public int compare(final FileTime o1, final FileTime o2) {
+            return Long.compare(o1.nanos, o2.nanos);
+        }
+    };
+
+    /** The bytes of the new content a delta write found in place, not counted as written. */
+    private final AtomicLong bytesKept = new AtomicLong();
+
+    private final AtomicLong bytesRead = new AtomicLong();
+
+    private final AtomicLong bytesWritten = new AtomicLong();
+
+    private final AtomicLong cacheHits = new AtomicLong();
+
+    private final AtomicLong cacheMisses = new AtomicLong();
+
+    private long cleanupNanos;
+
+    private final AtomicLong copied = new AtomicLong();
+
+    private final AtomicLong copyNanos = new AtomicLong();
+
+    private final AtomicLong deleted = new AtomicLong();
+
+    private final String id;
+
+    private final AtomicLong matched = new AtomicLong();
+
+    private final AtomicLong moved = new AtomicLong();
+
+    private long renameNanos;
+
+    private long replaceNanos;
+
+    private final AtomicLong rewritten = new AtomicLong();
+
+    private final AtomicLong scanNanos = new AtomicLong();
+
+    private final AtomicLong skipped = new AtomicLong();
+
+    /** The slowest files, the fastest of them first. */
+    private final PriorityQueue<FileTime> slowest = new PriorityQueue<FileTime>(16, FASTEST_FIRST);
+
+    private final int slowestCount;
+
+    private long totalNanos;
+
+    private long untouched;
+
+    ResourceMetrics(final String id, final int slowestCount) {
+        this.id = id;
+        this.slowestCount = slowestCount;
+    }
+
+    /**
+     * Counts a file copied or moved and remembers it if it is one of the slowest.
+     */
+    void addFile(final String path, final boolean move, final long read, final long written, final long nanos) {
+        (move ? moved : copied).incrementAndGet();
+        bytesRead.addAndGet(read);
+        bytesWritten.addAndGet(written);
+        copyNanos.addAndGet(nanos);
+        if (slowestCount > 0) {
+            synchronized (slowest) {
+                if (slowest.size() < slowestCount) {
+                    slowest.add(new FileTime(path, nanos));
+                } else if (slowest.peek().nanos < nanos) {
+                    slowest.poll();
+                    slowest.add(new FileTime(path, nanos));
+                }
+            }
+        }
+    }
+
+    /**
+     * Counts a file whose replaced content was found in the output cache or not.
+     */
+    void addCached(final boolean hit) {
+        (hit ? cacheHits : cacheMisses).incrementAndGet();
+    }
+
+    void addDeleted() {
+        deleted.incrementAndGet();
+    }
+
+    void addKept(final long bytes) {
+        bytesKept.addAndGet(bytes);
+    }
+
+    void addMatched() {
+        matched.incrementAndGet();
+    }
+
+    /**
+     * Counts files moved with their directory.
+     */
+    void addMoved(final int count) {
+        moved.addAndGet(count);
+    }
+
+    void addRewritten() {
+        rewritten.incrementAndGet();
+    }
+
+    void addScanNanos(final long nanos) {
+        scanNanos.addAndGet(nanos);
+    }
+
+    void addSkipped() {
+        skipped.incrementAndGet();
+    }
+
+    /**
+     * Takes the times and counters kept elsewhere once the resource is done.
+     */
+    void finish(final ResourceContext context, final long cleanupNanos, final long totalNanos) {
+        this.renameNanos = context.getRewriter().getMatchNanos();
+        this.replaceNanos = context.getReplacer().getMatchNanos();
+        this.untouched = context.getUntouched();
+        this.cleanupNanos = cleanupNanos;
+        this.totalNanos = totalNanos;
+    }
+
+    long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    long getBytesWritten() {
+        return bytesWritten.get() - bytesKept.get();
+    }
+
+    long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    long getCacheMisses() {
+        return cacheMisses.get();
+    }
+
+    long getCleanupNanos() {
+        return cleanupNanos;
+    }
+
+    long getCopied() {
+        return copied.get();
+    }
+
+    long getDeleted() {
+        return deleted.get();
+    }
+
+    String getId() {
+        return id;
+    }
+
+    long getMatched() {
+        return matched.get();
+    }
+
+    long getMoved() {
+        return moved.get();
+    }
+
+    long getRenameNanos() {
+        return renameNanos;
+    }
+
+    long getReplaceNanos() {
+        return replaceNanos;
+    }
+
+    long getRewritten() {
+        return rewritten.get();
+    }
+
+    long getScanNanos() {
+        return scanNanos.get();
+    }
+
+    long getSkipped() {
+        return skipped.get();
+    }
+
+    /**
+     * @return the slowest files, the slowest first
+     */
+    List<FileTime> getSlowest() {
+        List<FileTime> result;
+        synchronized (slowest) {
+            result = new ArrayList<FileTime>(slowest);
+        }
+        Collections.sort(result, Collections.reverseOrder(FASTEST_FIRST));
+        return result;
+    }
+
+    long getTotalNanos() {
+        return totalNanos;
+    }
+
+    long getUntouched() {
+        return untouched;
+    }
+
+    /**
+     * @return the time spent reading and writing files, without the replaces
+     */
+    long getWriteNanos() {
+        return Math.max(0, copyNanos.get() - replaceNanos);
+    }
+}
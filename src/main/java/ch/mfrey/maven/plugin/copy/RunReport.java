@@ -0,0 +1,176 @@
+package ch.mfrey.maven.plugin.copy;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * The metrics of all resources of a run, written as JSON or, for a file ending in <code>.csv</code>, as CSV with a
+ * line per resource. Times are in milliseconds, the throughput is in bytes read per second.
+ */
+class RunReport {
+
+    private static final String[] COLUMNS = { "resource", "matched", "copied", "moved", "rewritten", "skipped",
+            "deleted", "cacheHits", "cacheMisses", "untouched", "bytesRead", "bytesWritten", "scanMs", "renameMs",
+            "replaceMs", "writeMs", "cleanupMs", "totalMs", "bytesPerSecond" };
+
+    private static String escapeCsv(final String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static String escapeJson(final String value) {
+        StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    static String formatBytes(final long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        double value = bytes;
+        String[] units = { "KB", "MB", "GB", "TB" };
+        int unit = -1;
+        while (value >= 1024 && unit < units.length - 1) {
+            value /= 1024;
+            unit++;
+        }
+        return String.format(Locale.ENGLISH, "%.1f %s", value, units[unit]);
+    }
+
+    private static long millis(final long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    private static long throughput(final long bytes, final long nanos) {
+        return nanos <= 0 ? 0 : (long) (bytes * 1e9 / nanos);
+    }
+
+    private final List<ResourceMetrics> resources = new ArrayList<ResourceMetrics>();
+
+    void add(final ResourceMetrics metrics) {
+        resources.add(metrics);
+    }
+
+    /**
+     * @return one line about the output cache for all resources
+     */
+    String cacheSummary() {
+        long hits = 0;
+        long misses = 0;
+        for (ResourceMetrics metrics : resources) {
+            hits += metrics.getCacheHits();
+            misses += metrics.getCacheMisses();
+        }
+        return "Output cache: " + hits + " hits, " + misses + " misses";
+    }
+
+    /**
+     * @return one line summing up all resources
+     */
+    String summary() {
+        long matched = 0;
+        long copied = 0;
+        long moved = 0;
+        long rewritten = 0;
+        long skipped = 0;
+        long deleted = 0;
+        long read = 0;
+        long written = 0;
+        long nanos = 0;
+        for (ResourceMetrics metrics : resources) {
+            matched += metrics.getMatched();
+            copied += metrics.getCopied();
+            moved += metrics.getMoved();
+            rewritten += metrics.getRewritten();
+            skipped += metrics.getSkipped();
+            deleted += metrics.getDeleted();
+            read += metrics.getBytesRead();
+            written += metrics.getBytesWritten();
+            nanos += metrics.getTotalNanos();
+        }
+        return String.format(Locale.ENGLISH, "%d files matched by %d resources: %d copied, %d moved, %d rewritten, "
+                + "%d skipped, %d deleted; %s read, %s written in %d ms (%s/s)", matched, resources.size(), copied,
+                moved, rewritten, skipped, deleted, formatBytes(read), formatBytes(written), millis(nanos),
+                formatBytes(throughput(read, nanos)));
+    }
+
+    private Object[] values(final ResourceMetrics metrics) {
+        return new Object[] { metrics.getId(), metrics.getMatched(), metrics.getCopied(), metrics.getMoved(),
+                metrics.getRewritten(), metrics.getSkipped(), metrics.getDeleted(), metrics.getCacheHits(),
+                metrics.getCacheMisses(), metrics.getUntouched(),
+                metrics.getBytesRead(), metrics.getBytesWritten(), millis(metrics.getScanNanos()),
+                millis(metrics.getRenameNanos()), millis(metrics.getReplaceNanos()), millis(metrics.getWriteNanos()),
+                millis(metrics.getCleanupNanos()), millis(metrics.getTotalNanos()),
+                throughput(metrics.getBytesRead(), metrics.getTotalNanos()) };
+    }
+
+    void write(final File file) throws IOException {
+        FileUtils.forceMkdir(file.getAbsoluteFile().getParentFile());
+        try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            if (file.getName().endsWith(".csv")) {
+                writeCsv(writer);
+            } else {
+                writeJson(writer);
+            }
+        }
+    }
+
+    private void writeCsv(final Writer writer) throws IOException {
+        writer.write(String.join(",", COLUMNS));
+        writer.write('\n');
+        for (ResourceMetrics metrics : resources) {
+            Object[] values = values(metrics);
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writer.write(i == 0 ? escapeCsv(String.valueOf(values[i])) : String.valueOf(values[i]));
+            }
+            writer.write('\n');
+        }
+    }
+
+    private void writeJson(final Writer writer) throws IOException {
+        writer.write("{\n  \"resources\": [");
+        for (int r = 0; r < resources.size(); r++) {
+            ResourceMetrics metrics = resources.get(r);
+            writer.write(r == 0 ? "\n    {" : ",\n    {");
+            Object[] values = values(metrics);
+            for (int i = 0; i < values.length; i++) {
+                writer.write(i == 0 ? "\n      " : ",\n      ");
+                writer.write(escapeJson(COLUMNS[i]) + ": ");
+                writer.write(i == 0 ? escapeJson(String.valueOf(values[i])) : String.valueOf(values[i]));
+            }
+            writer.write(",\n      \"slowest\": [");
+            List<ResourceMetrics.FileTime> slowest = metrics.getSlowest();
+            for (int i = 0; i < slowest.size(); i++) {
+                writer.write(i == 0 ? "\n        " : ",\n        ");
+                writer.write("{ \"path\": " + escapeJson(slowest.get(i).getPath()) + ", \"ms\": "
+                        + String.format(Locale.ENGLISH, "%.3f", slowest.get(i).getNanos() / 1e6) + " }");
+            }
+            writer.write(slowest.isEmpty() ? "]\n    }" : "\n      ]\n    }");
+        }
+        writer.write(resources.isEmpty() ? "]\n}\n" : "\n  ]\n}\n");
+    }
+}
@@ -0,0 +1,225 @@
+package ch.mfrey.maven.plugin.copy;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache shared by all executions of the plugin in a build, which run in the same class realm, also on the threads
+ * of a parallel build. It holds the listings of directories, valid as long as the modification time of the directory
+ * does not change, and the replaced content of files, valid as long as their size, modification time and identity do
+ * not change. The least recently used entries are dropped once their estimated size exceeds the largest limit of the
+ * executions. Each execution gets its own instance counting its hits and misses. The entries of a build are dropped
+ * when the next build of a long running Maven starts, and are softly held, so the garbage collector may drop them
+ * when memory runs low between executions.
+ */
+final class SessionCache {
+
+    /**
+     * An entry of a directory listing.
+     */
+    static class Child {
+
+        private final boolean directory;
+
+        private final String name;
+
+        private final boolean regularFile;
+
+        Child(final String name, final boolean directory, final boolean regularFile) {
+            this.name = name;
+            this.directory = directory;
+            this.regularFile = regularFile;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        boolean isDirectory() {
+            return directory;
+        }
+
+        boolean isRegularFile() {
+            return regularFile;
+        }
+    }
+
+    /**
+     * A cached value with what it is valid for and its estimated size.
+     */
+    private static class Entry {
+
+        private final Object value;
+
+        private final Object version;
+
+        private final long weight;
+
+        Entry(final Object value, final Object version, final long weight) {
+            this.value = value;
+            this.version = version;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * The entries of a build.
+     */
+    private static class Store {
+
+        private final Object build;
+
+        private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+        private long maxSize;
+
+        private long size;
+
+        Store(final Object build) {
+            this.build = build;
+        }
+
+        private void trim() {
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (size > maxSize && eldest.hasNext()) {
+                size -= eldest.next().weight;
+                eldest.remove();
+            }
+        }
+    }
+
+    /** The estimated bytes of a directory entry without its name. */
+    private static final int CHILD_SIZE = 48;
+
+    /** The estimated bytes of an entry without its content. */
+    private static final int ENTRY_SIZE = 128;
+
+    private static SoftReference<Store> current = new SoftReference<Store>(null);
+
+    /**
+     * @return a fingerprint of everything in the configuration of the resource which changes the replaced content
+     */
+    static String fingerprint(final Resource resource) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(resource.getCharset()).append('\n').append(resource.isSimultaneousReplaces()).append('\n');
+        for (Replace replace : resource.getReplaces()) {
+            sb.append(replace.isRegex()).append(' ').append(replace.getFrom()).append('\0').append(replace.getTo())
+                    .append('\n');
+        }
+        return Checksums.of(sb.toString());
+    }
+
+    /**
+     * @param build
+     *            what tells the build, like its start time
+     * @return the cache of the build for one execution, holding at least <code>maxSize</code> bytes from now on
+     */
+    static synchronized SessionCache get(final Object build, final long maxSize) {
+        Store store = current.get();
+        if (store == null || !Objects.equals(store.build, build)) {
+            store = new Store(build);
+            current = new SoftReference<Store>(store);
+        }
+        synchronized (store) {
+            store.maxSize = Math.max(store.maxSize, maxSize);
+        }
+        return new SessionCache(store);
+    }
+
+    /**
+     * @return what identifies the current content of a file
+     */
+    static Object identity(final File file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        return Arrays.asList(attributes.size(), attributes.lastModifiedTime(), attributes.fileKey());
+    }
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final Store store;
+
+    private SessionCache(final Store store) {
+        this.store = store;
+    }
+
+    /**
+     * @return the replaced content of the file if it was cached for the same identity and replaces, null otherwise
+     */
+    byte[] getContent(final File file, final String fingerprint, final Object identity) {
+        return (byte[]) lookup("content " + fingerprint + ' ' + file.getAbsolutePath(), identity);
+    }
+
+    /**
+     * @return the entries of the directory if it was listed with the same modification time, null otherwise
+     */
+    @SuppressWarnings("unchecked")
+    List<Child> getListing(final Path directory, final BasicFileAttributes attributes) {
+        return (List<Child>) lookup("listing " + directory.toAbsolutePath(), attributes.lastModifiedTime());
+    }
+
+    private Object lookup(final String key, final Object version) {
+        synchronized (store) {
+            Entry entry = store.entries.get(key);
+            if (entry != null && entry.version.equals(version)) {
+                hits.incrementAndGet();
+                return entry.value;
+            }
+            if (entry != null) {
+                store.entries.remove(key);
+                store.size -= entry.weight;
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    void putContent(final File file, final String fingerprint, final Object identity, final byte[] content) {
+        store("content " + fingerprint + ' ' + file.getAbsolutePath(), identity, content, ENTRY_SIZE
+                + content.length);
+    }
+
+    void putListing(final Path directory, final BasicFileAttributes attributes, final List<Child> children) {
+        long weight = ENTRY_SIZE;
+        for (Child child : children) {
+            weight += CHILD_SIZE + 2 * child.getName().length();
+        }
+        store("listing " + directory.toAbsolutePath(), attributes.lastModifiedTime(), children, weight);
+    }
+
+    private void store(final String key, final Object version, final Object value, final long weight) {
+        synchronized (store) {
+            if (weight > store.maxSize) {
+                return;
+            }
+            Entry previous = store.entries.put(key, new Entry(value, version, weight));
+            if (previous != null) {
+                store.size -= previous.weight;
+            }
+            store.size += weight;
+            store.trim();
+        }
+    }
+
+    /**
+     * @return one line about the use of the cache by the execution so far
+     */
+    String summary() {
+        synchronized (store) {
+            return "Session cache: " + hits + " hits, " + misses + " misses, " + RunReport.formatBytes(store.size)
+                    + " of " + RunReport.formatBytes(store.maxSize) + " held";
+        }
+    }
+}
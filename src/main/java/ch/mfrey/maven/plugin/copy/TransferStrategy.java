@@ -0,0 +1,137 @@
+package ch.mfrey.maven.plugin.copy;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * How a file without replaces is copied to its destination. The link based strategies fall back to {@link #COPY}
+ * where the file system cannot create the link, like across devices.
+ */
+public enum TransferStrategy {
+
+    /** The streams of commons-io, keeping the modification time. */
+    COPY {
+        @Override
+        boolean tryTransfer(final File srcFile, final File destFile) throws IOException {
+            FileUtils.copyFile(srcFile, destFile);
+            return true;
+        }
+    },
+
+    /** <code>FileChannel.transferTo</code>, which the kernel may do without copying through user space. */
+    CHANNEL {
+        @Override
+        boolean tryTransfer(final File srcFile, final File destFile) throws IOException {
+            try (FileChannel in = FileChannel.open(srcFile.toPath(), StandardOpenOption.READ);
+                    FileChannel out = FileChannel.open(destFile.toPath(), StandardOpenOption.CREATE,
+                            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                long size = in.size();
+                long position = 0;
+                while (position < size) {
+                    position += in.transferTo(position, size - position, out);
+                }
+            }
+            destFile.setLastModified(srcFile.lastModified());
+            return true;
+        }
+    },
+
+    /** <code>Files.copy</code>, using the copy of the file system where there is one. */
+    NIO {
+        @Override
+        boolean tryTransfer(final File srcFile, final File destFile) throws IOException {
+            Files.copy(srcFile.toPath(), destFile.toPath(), StandardCopyOption.COPY_ATTRIBUTES);
+            return true;
+        }
+    },
+
+    /** A hard link, the destination shares the content of the source. */
+    HARDLINK {
+        @Override
+        boolean tryTransfer(final File srcFile, final File destFile) throws IOException {
+            try {
+                Files.createLink(destFile.toPath(), srcFile.toPath());
+                return true;
+            } catch (UnsupportedOperationException | FileSystemException ex) {
+                return false;
+            }
+        }
+    },
+
+    /** A symbolic link to the absolute path of the source. */
+    SYMLINK {
+        @Override
+        boolean tryTransfer(final File srcFile, final File destFile) throws IOException {
+            try {
+                Files.createSymbolicLink(destFile.toPath(), srcFile.getAbsoluteFile().toPath());
+                return true;
+            } catch (UnsupportedOperationException | FileSystemException ex) {
+                return false;
+            }
+        }
+    },
+
+    /** A copy-on-write clone made by <code>cp</code>, on file systems like Btrfs, XFS or APFS. */
+    REFLINK {
+        @Override
+        boolean tryTransfer(final File srcFile, final File destFile) throws IOException {
+            String os = System.getProperty("os.name").toLowerCase(Locale.ENGLISH);
+            String option;
+            if (os.contains("linux")) {
+                option = "--reflink=always";
+            } else if (os.contains("mac")) {
+                option = "-c";
+            } else {
+                return false;
+            }
+            Process process = new ProcessBuilder("cp", "-p", option, srcFile.getAbsolutePath(),
+                    destFile.getAbsolutePath()).redirectErrorStream(true).start();
+            try (InputStream in = process.getInputStream()) {
+                byte[] buffer = new byte[1024];
+                while (in.read(buffer) != -1) {
+                    // Only drained, the outcome is the exit code
+                }
+                if (process.waitFor() == 0) {
+                    return true;
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while cloning " + srcFile, ex);
+            }
+            Files.deleteIfExists(destFile.toPath());
+            return false;
+        }
+    };
+
+    /**
+     * Copies <code>srcFile</code> to the not existing <code>destFile</code>, creating its parent directories.
+     *
+     * @return the strategy which was used in the end
+     */
+    public TransferStrategy transfer(final File srcFile, final File destFile) throws IOException {
+        Path parent = destFile.getAbsoluteFile().toPath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        if (tryTransfer(srcFile, destFile)) {
+            return this;
+        }
+        COPY.tryTransfer(srcFile, destFile);
+        return COPY;
+    }
+
+    /**
+     * @return false if the file system does not support this strategy
+     */
+    abstract boolean tryTransfer(File srcFile, File destFile) throws IOException;
+}
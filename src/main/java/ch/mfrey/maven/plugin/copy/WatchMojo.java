@@ -0,0 +1,282 @@
+package ch.mfrey.maven.plugin.copy;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Runs the resources once like the copy goal, then watches their directories and copies the files created or modified
+ * there, and deletes the destinations of the files deleted, until the build is interrupted. The events are collected
+ * until none arrived for <code>watchDebounce</code> milliseconds and applied as one batch. Resources reading from or
+ * writing into an archive are not watched.
+ */
+@Mojo(name = "watch", threadSafe = true)
+public class WatchMojo extends CopyMojo {
+
+    /**
+     * Milliseconds without an event before the changes collected are applied.
+     */
+    @Parameter(defaultValue = "50")
+    private long watchDebounce = 50;
+
+    /**
+     * Milliseconds without an event after which watching stops, 0 to watch until the build is interrupted.
+     */
+    @Parameter(defaultValue = "0")
+    private long watchTimeout;
+
+    /** The files below the watched directories, so the ones of a directory deleted or moved away are known. */
+    private final Set<Path> watchedFiles = new HashSet<Path>();
+
+    /** The modification time of the destinations written, so the events of writing them are not copied again. */
+    private final Map<String, Long> written = new HashMap<String, Long>();
+
+    /**
+     * Copies or deletes the changed files of all resources.
+     *
+     * @return the number of files copied or deleted
+     */
+    private int apply(final List<ResourceContext> contexts, final Set<Path> changed) {
+        int count = 0;
+        for (Path path : changed) {
+            for (ResourceContext context : contexts) {
+                Path workingDir = context.getWorkingDir().getAbsoluteFile().toPath();
+                if (!path.startsWith(workingDir) || path.equals(workingDir)
+                        || !context.getScanner().isSelected(context.relativize(path.toFile()))) {
+                    continue;
+                }
+                try {
+                    if (apply(context, path.toFile())) {
+                        count++;
+                    }
+                } catch (IOException | RuntimeException ex) {
+                    // Like a file still being written, the next event of the file copies it
+                    getLog().error("Failed to copy " + path + ": " + ex);
+                }
+            }
+            if (!Files.exists(path)) {
+                // Only the destinations still there can cause events
+                written.remove(path.toFile().getAbsolutePath());
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return false if the file was left alone, being one of the destinations written or a source of a move gone
+     */
+    private boolean apply(final ResourceContext context, final File srcFile) throws IOException {
+        Long stamp = written.get(srcFile.getAbsolutePath());
+        if (srcFile.isFile()) {
+            if (stamp != null && stamp.longValue() == srcFile.lastModified()) {
+                return false;
+            }
+            FileOperation operation = prepare(context, srcFile);
+            try {
+                process(context, operation);
+            } finally {
+                operation.log(getLog());
+            }
+            File destFile = operation.getDestFile();
+            written.put(destFile.getAbsolutePath(), destFile.lastModified());
+            return true;
+        }
+        if (srcFile.exists() || stamp != null || context.getResource().isMove()) {
+            return false;
+        }
+        File destFile = new File(getNewPath(context, srcFile, new FileOperation(srcFile)));
+        if (destFile.getAbsolutePath().equals(srcFile.getAbsolutePath()) || !destFile.isFile()) {
+            return false;
+        }
+        Files.delete(destFile.toPath());
+        written.remove(destFile.getAbsolutePath());
+        if (isShowfiles() && getLog().isInfoEnabled()) {
+            getLog().info(" rm " + destFile.getAbsolutePath());
+        }
+        return true;
+    }
+
+    /**
+     * Adds the paths of the events of a key to <code>changed</code>, with all files of the directories created and
+     * the files known below the directories deleted.
+     *
+     * @return false if events were lost and the resources have to be copied again
+     */
+    private boolean collect(final WatchService service, final Map<WatchKey, Path> directories, final WatchKey key,
+            final Set<Path> changed) throws IOException {
+        Path directory = directories.get(key);
+        boolean complete = true;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                complete = false;
+                continue;
+            }
+            Path path = directory.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+                // Files created before the directory was registered have no event of their own
+                register(service, directories, path, changed);
+            } else if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE && !watchedFiles.remove(path)) {
+                // A directory, the files which were in it have no event of their own when it is moved away
+                changed.add(path);
+                for (Iterator<Path> files = watchedFiles.iterator(); files.hasNext();) {
+                    Path file = files.next();
+                    if (file.startsWith(path)) {
+                        changed.add(file);
+                        files.remove();
+                    }
+                }
+            } else {
+                if (Files.isRegularFile(path)) {
+                    watchedFiles.add(path);
+                }
+                changed.add(path);
+            }
+        }
+        if (!key.reset()) {
+            directories.remove(key);
+        }
+        return complete;
+    }
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        super.execute();
+        if (isSkip() || getResources() == null || getResources().length == 0) {
+            return;
+        }
+        List<ResourceContext> contexts = new ArrayList<ResourceContext>();
+        for (Resource resource : getResources()) {
+            if (isArchived(resource)) {
+                getLog().info("Archives are not watched: " + resource.getId());
+            } else {
+                contexts.add(createContext(resource));
+            }
+        }
+        try (WatchService service = FileSystems.getDefault().newWatchService()) {
+            Map<WatchKey, Path> directories = new HashMap<WatchKey, Path>();
+            register(service, directories, contexts);
+            getLog().info("Watching " + directories.size() + " directories for changes");
+            watch(service, directories, contexts);
+        } catch (IOException ex) {
+            throw new MojoExecutionException("Error during CopyMojo", ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            getLog().info("Stopped watching");
+        }
+    }
+
+    /**
+     * Watches the working directories of the resources and the directories below them. Registering a directory again
+     * keeps its key, so this also adds the directories created meanwhile.
+     */
+    private void register(final WatchService service, final Map<WatchKey, Path> directories,
+            final List<ResourceContext> contexts) throws IOException {
+        Set<Path> registered = new LinkedHashSet<Path>();
+        for (ResourceContext context : contexts) {
+            Path workingDir = context.getWorkingDir().getAbsoluteFile().toPath();
+            if (registered.add(workingDir)) {
+                register(service, directories, workingDir, null);
+            }
+        }
+    }
+
+    /**
+     * Watches a directory and the directories below it. The files already in there are added to <code>changed</code>
+     * unless it is null.
+     */
+    private void register(final WatchService service, final Map<WatchKey, Path> directories, final Path directory,
+            final Set<Path> changed) throws IOException {
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs)
+                    throws IOException {
+                directories.put(dir.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE), dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+                watchedFiles.add(file);
+                if (changed != null) {
+                    changed.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(final Path file, final IOException exc) {
+                // Like a directory deleted while walking it
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    public void setWatchDebounce(final long watchDebounce) {
+        this.watchDebounce = watchDebounce;
+    }
+
+    public void setWatchTimeout(final long watchTimeout) {
+        this.watchTimeout = watchTimeout;
+    }
+
+    /**
+     * Collects the events until none arrived for <code>watchDebounce</code> milliseconds and applies them, until no
+     * event arrived for <code>watchTimeout</code> milliseconds.
+     */
+    private void watch(final WatchService service, final Map<WatchKey, Path> directories,
+            final List<ResourceContext> contexts) throws IOException, InterruptedException, MojoExecutionException,
+            MojoFailureException {
+        while (!directories.isEmpty()) {
+            WatchKey key = watchTimeout > 0 ? service.poll(watchTimeout, TimeUnit.MILLISECONDS) : service.take();
+            if (key == null) {
+                getLog().info("No change for " + watchTimeout + " ms, stopped watching");
+                return;
+            }
+            Set<Path> changed = new LinkedHashSet<Path>();
+            boolean complete = true;
+            while (key != null) {
+                complete &= collect(service, directories, key, changed);
+                key = service.poll(watchDebounce, TimeUnit.MILLISECONDS);
+            }
+            if (!complete) {
+                getLog().warn("Events were lost, copying all resources again");
+                // The directories created in the events lost are not watched yet
+                watchedFiles.clear();
+                register(service, directories, contexts);
+                super.execute();
+                continue;
+            }
+            long applyStart = System.nanoTime();
+            int count = apply(contexts, changed);
+            if (count > 0) {
+                getLog().info("Applied " + count + " changes in "
+                        + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - applyStart) + " ms");
+            }
+        }
+        getLog().info("No directory left to watch");
+    }
+}
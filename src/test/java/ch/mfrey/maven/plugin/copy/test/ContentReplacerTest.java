@@ -0,0 +1,127 @@
+package ch.mfrey.maven.plugin.copy.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import ch.mfrey.maven.plugin.copy.ByteReplacer;
+import ch.mfrey.maven.plugin.copy.ContentReplacer;
+import ch.mfrey.maven.plugin.copy.Replace;
+
+public class ContentReplacerTest {
+
+    private String content(final int lines) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            sb.append("line ").append(i).append(": some content to be modified, ch.mfrey.old").append('\n');
+        }
+        return sb.toString();
+    }
+
+    private String expected(final String content, final List<Replace> replaces) {
+        String result = content;
+        for (Replace replace : replaces) {
+            if (replace.isRegex()) {
+                result = result.replaceAll(replace.getFrom(), replace.getTo());
+            } else {
+                result = result.replace(replace.getFrom(), replace.getTo());
+            }
+        }
+        return result;
+    }
+
+    private String stream(final String content, final List<Replace> replaces) throws IOException {
+        StringWriter writer = new StringWriter();
+        new ContentReplacer(replaces, 256).replace(new StringReader(content), writer);
+        return writer.toString();
+    }
+
+    @Test
+    public void testBytes() throws IOException {
+        List<Replace> replaces = Arrays.asList(Replace.asReplace("ch.mfrey.old", "ch.mfrey.nëw"),
+                Replace.asReplace("line", "zeile"), Replace.asReplace("some", "any"), Replace.asReplace("e", "é"),
+                Replace.asReplace("modified", "geändert"), Replace.asReplace("ed,", "ed;"));
+        String content = content(5000).replace("content", "cöntent ✓");
+        String expected = expected(content, replaces);
+        for (Charset charset : new Charset[] { StandardCharsets.UTF_8, StandardCharsets.ISO_8859_1 }) {
+            ContentReplacer replacer = new ContentReplacer(replaces, 256);
+            ByteReplacer bytes = ByteReplacer.of(replacer, charset);
+            Assert.assertNotNull(bytes);
+            Assert.assertArrayEquals(expected.getBytes(charset), bytes.replace(content.getBytes(charset)));
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            bytes.replace(Channels.newChannel(new ByteArrayInputStream(content.getBytes(charset))),
+                    Channels.newChannel(out));
+            Assert.assertArrayEquals(expected.getBytes(charset), out.toByteArray());
+        }
+
+        // Characters are needed
+        Assert.assertNull(ByteReplacer.of(new ContentReplacer(replaces, 256), StandardCharsets.UTF_16));
+        Assert.assertNull(ByteReplacer.of(new ContentReplacer(Arrays.asList(Replace.asReplace("ö", "o")), 256),
+                StandardCharsets.UTF_8));
+        Assert.assertNull(ByteReplacer.of(new ContentReplacer(Arrays.asList(Replace.asRegex("o+", "o")), 256),
+                StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testEmptyFrom() throws IOException {
+        List<Replace> replaces = Arrays.asList(Replace.asReplace("", "-"));
+        String content = content(1000);
+        Assert.assertEquals(expected(content, replaces), stream(content, replaces));
+    }
+
+    @Test
+    public void testLiteral() throws IOException {
+        List<Replace> replaces = Arrays.asList(Replace.asReplace("to be modified", "has been modified"),
+                Replace.asReplace("ch.mfrey.old", "ch.mfrey.new"), Replace.asReplace("modified", "changed"));
+        String content = content(5000);
+        Assert.assertEquals(expected(content, replaces), stream(content, replaces));
+    }
+
+    @Test
+    public void testManyLiterals() throws IOException {
+        // Some of them interact with each other and have to stay sequential
+        List<Replace> replaces = Arrays.asList(Replace.asReplace("ch.mfrey.old", "ch.mfrey.new"),
+                Replace.asReplace("line", "row"), Replace.asReplace("some", "any"), Replace.asReplace("row 1", "row X"),
+                Replace.asReplace("content", ""), Replace.asReplace("  ", " "), Replace.asReplace("ch", "CH"),
+                Replace.asReplace("o", "0"), Replace.asReplace("to be", "is"), Replace.asReplace("ed,", "ed;"));
+        String content = content(5000);
+        Assert.assertEquals(expected(content, replaces), stream(content, replaces));
+        Assert.assertEquals(expected(content, replaces), new ContentReplacer(replaces, 256).replace(content));
+    }
+
+    @Test
+    public void testRegex() throws IOException {
+        List<Replace> replaces = Arrays.asList(Replace.asRegex("to be m([^d]+)d", "has been m$1d"),
+                Replace.asRegex("(?m)^line (\\d+)", "row $1"), Replace.asRegex("(?<=\\.)old", "new"),
+                Replace.asReplace("content", "text"));
+        String content = content(5000);
+        Assert.assertEquals(expected(content, replaces), stream(content, replaces));
+    }
+
+    @Test
+    public void testSimultaneous() {
+        List<Replace> replaces = Arrays.asList(Replace.asReplace("ab", "x"), Replace.asReplace("b", "a"),
+                Replace.asReplace("a", "b"), Replace.asReplace("abc", "y"));
+        ContentReplacer replacer = new ContentReplacer(replaces, 256, true);
+        Assert.assertEquals("xaxb", replacer.replace("abbaba"));
+        Assert.assertEquals("xc", replacer.replace("abc"));
+        Assert.assertEquals("xbxb", new ContentReplacer(replaces, 256, false).replace("abbaba"));
+
+        replaces = Arrays.asList(Replace.asRegex("a(b+)", "<$1>"), Replace.asRegex("(c)(d)?", "$2$1$10"),
+                Replace.asRegex("<", "["));
+        replacer = new ContentReplacer(replaces, 256, true);
+        Assert.assertEquals("<bb>dcc0<b>cc0", replacer.replace("abbcdabc"));
+        Assert.assertEquals("[bb>dcc0[b>cc0", new ContentReplacer(replaces, 256, false).replace("abbcdabc"));
+    }
+}
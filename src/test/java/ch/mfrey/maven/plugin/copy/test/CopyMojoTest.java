@@ -1,18 +1,31 @@
 package ch.mfrey.maven.plugin.copy.test;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
 
 import org.apache.commons.io.FileExistsException;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
 import org.junit.Assert;
 import org.junit.Test;
 
 import ch.mfrey.maven.plugin.copy.CopyMojo;
+import ch.mfrey.maven.plugin.copy.EmptyDirCleanup;
+import ch.mfrey.maven.plugin.copy.PlanMojo;
 import ch.mfrey.maven.plugin.copy.Replace;
 import ch.mfrey.maven.plugin.copy.Resource;
+import ch.mfrey.maven.plugin.copy.TransferStrategy;
+import ch.mfrey.maven.plugin.copy.WatchMojo;
 
 public class CopyMojoTest {
 
@@ -146,6 +159,399 @@ public class CopyMojoTest {
         Assert.assertTrue(readFileToString.indexOf("has been modified", idx + 1) != -1);
     }
 
+    @Test
+    public void testCopyAndReplaceStreaming() throws MojoExecutionException, MojoFailureException, IOException {
+        CopyMojo mojo = new CopyMojo();
+        mojo.setShowfiles(true);
+
+        Resource resource = new Resource();
+        resource.setId("testCopyAndReplaceStreaming");
+        resource.setStreaming(true);
+        resource.addInclude("folder1/**/*.txt");
+        resource.setDirectory(currentLoc);
+        resource.addPath(Replace.asReplace("folder1/folder2", "stream1/stream2"));
+        resource.addReplace(Replace.asRegex("to be m([^d]+)d", "has been m$1d"));
+        resource.addReplace(Replace.asReplace("content", "text"));
+        mojo.setResources(new Resource[] { resource });
+
+        mojo.execute();
+
+        Assert.assertTrue(new File(currentLoc + "/folder1/folder2/test1.txt").exists());
+        File file = new File(currentLoc + "/stream1/stream2/test1.txt");
+        Assert.assertTrue(file.exists());
+        String readFileToString = FileUtils.readFileToString(file, resource.getCharset());
+        file.delete();
+
+        Assert.assertEquals("some text has been modified\n\nanother text has been modified", readFileToString);
+    }
+
+    @Test
+    public void testArchive() throws MojoExecutionException, MojoFailureException, IOException {
+        File dir = new File(currentLoc, "archive1");
+        dir.mkdirs();
+        File sources = new File(dir, "sources.zip");
+        byte[] binary = { 't', 'o', ' ', 'b', 'e', 0, 1, 2, (byte) 0xFF };
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(sources))) {
+            out.putNextEntry(new ZipEntry("src/a/file1.txt"));
+            out.write("content to be modified".getBytes("UTF-8"));
+            out.putNextEntry(new ZipEntry("src/a/data.bin"));
+            out.write(binary);
+            out.putNextEntry(new ZipEntry("other/file2.txt"));
+            out.write("content to be modified".getBytes("UTF-8"));
+        }
+        File target = new File(dir, "target.zip");
+
+        CopyMojo mojo = new CopyMojo();
+        mojo.setShowfiles(true);
+
+        Resource resource = new Resource();
+        resource.setId("testArchive");
+        resource.setDirectory("jar:" + sources.getAbsolutePath() + "!/src");
+        resource.setArchive(target.getAbsolutePath());
+        resource.addPath(Replace.asReplace("/a/", "/b/"));
+        resource.addReplace(Replace.asReplace("to be modified", "has been modified"));
+        mojo.setResources(new Resource[] { resource });
+
+        mojo.execute();
+
+        try (ZipFile zip = new ZipFile(target)) {
+            Assert.assertNull(zip.getEntry("a/file1.txt"));
+            Assert.assertNull(zip.getEntry("other/file2.txt"));
+            Assert.assertEquals("content has been modified",
+                    IOUtils.toString(zip.getInputStream(zip.getEntry("b/file1.txt")), "UTF-8"));
+            Assert.assertArrayEquals(binary, IOUtils.toByteArray(zip.getInputStream(zip.getEntry("b/data.bin"))));
+        }
+
+        // The archive given as a file URI
+        File uriTarget = new File(dir, "uri.zip");
+        resource.setDirectory("jar:" + sources.toURI() + "!/src");
+        resource.setArchive(uriTarget.getAbsolutePath());
+        mojo.execute();
+        try (ZipFile zip = new ZipFile(uriTarget)) {
+            Assert.assertEquals("content has been modified",
+                    IOUtils.toString(zip.getInputStream(zip.getEntry("b/file1.txt")), "UTF-8"));
+        }
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void testBinaryFiles() throws MojoExecutionException, MojoFailureException, IOException {
+        File srcDir = new File(currentLoc, "binary1");
+        byte[] binary = new byte[] { 'c', 'o', 'n', 't', 'e', 'n', 't', 0, (byte) 0xFF };
+        FileUtils.writeByteArrayToFile(new File(srcDir, "data.bin"), binary);
+        FileUtils.writeByteArrayToFile(new File(srcDir, "data.dat"), binary);
+        FileUtils.writeByteArrayToFile(new File(srcDir, "data.txt"), binary);
+        FileUtils.writeStringToFile(new File(srcDir, "image.png"), "content", "UTF-8");
+        FileUtils.writeStringToFile(new File(srcDir, "text.txt"), "content", "UTF-8");
+        FileUtils.writeStringToFile(new File(srcDir, "text.lst"), "content", "UTF-8");
+
+        CopyMojo mojo = new CopyMojo();
+        mojo.setShowfiles(true);
+
+        Resource resource = new Resource();
+        resource.setId("testBinaryFiles");
+        resource.addInclude("binary1/**");
+        resource.addTextInclude("**/*.dat");
+        resource.addBinaryInclude("**/*.lst");
+        resource.setDirectory(currentLoc);
+        resource.addPath(Replace.asReplace("binary1", "binary2"));
+        resource.addReplace(Replace.asReplace("content", "text"));
+        mojo.setResources(new Resource[] { resource });
+
+        mojo.execute();
+
+        File destDir = new File(currentLoc, "binary2");
+        Assert.assertArrayEquals(binary, FileUtils.readFileToByteArray(new File(destDir, "data.bin")));
+        Assert.assertArrayEquals(binary, FileUtils.readFileToByteArray(new File(destDir, "data.txt")));
+        Assert.assertEquals("content", FileUtils.readFileToString(new File(destDir, "image.png"), "UTF-8"));
+        Assert.assertEquals("content", FileUtils.readFileToString(new File(destDir, "text.lst"), "UTF-8"));
+        Assert.assertEquals("text", FileUtils.readFileToString(new File(destDir, "text.txt"), "UTF-8"));
+        Assert.assertTrue(FileUtils.readFileToString(new File(destDir, "data.dat"), "UTF-8").startsWith("text"));
+        FileUtils.deleteDirectory(srcDir);
+        FileUtils.deleteDirectory(destDir);
+    }
+
+    @Test
+    public void testCleanupEmptyDirs() throws MojoExecutionException, MojoFailureException, IOException {
+        File srcDir = new File(currentLoc, "cleanup1");
+        for (EmptyDirCleanup cleanup : new EmptyDirCleanup[] { EmptyDirCleanup.AUTO, EmptyDirCleanup.NEVER }) {
+            FileUtils.writeStringToFile(new File(srcDir, "a/b/test.txt"), "content", "UTF-8");
+            FileUtils.writeStringToFile(new File(srcDir, "a/test.txt"), "content", "UTF-8");
+            FileUtils.forceMkdir(new File(srcDir, "untouched"));
+
+            CopyMojo mojo = new CopyMojo();
+            mojo.setShowfiles(true);
+
+            Resource resource = new Resource();
+            resource.setId("testCleanupEmptyDirs");
+            resource.setMove(true);
+            resource.setCleanupEmptyDirs(cleanup);
+            resource.addInclude("cleanup1/**/*.txt");
+            resource.setDirectory(currentLoc);
+            resource.addPath(Replace.asRegex("cleanup1/(.*)", "cleanup2/$1.moved"));
+            mojo.setResources(new Resource[] { resource });
+
+            mojo.execute();
+
+            Assert.assertTrue(new File(currentLoc, "cleanup2/a/b/test.txt.moved").exists());
+            Assert.assertTrue(new File(srcDir, "untouched").isDirectory());
+            Assert.assertEquals(cleanup.name(), cleanup == EmptyDirCleanup.NEVER, new File(srcDir, "a").exists());
+            FileUtils.deleteDirectory(srcDir);
+            FileUtils.deleteDirectory(new File(currentLoc, "cleanup2"));
+        }
+    }
+
+    @Test
+    public void testCopyParallel() throws MojoExecutionException, MojoFailureException, IOException {
+        File srcDir = new File(currentLoc, "parallel1");
+        for (int i = 0; i < 200; i++) {
+            FileUtils.writeStringToFile(new File(srcDir, "dir" + i % 10 + "/file" + i + ".txt"), "content " + i
+                    + " to be modified", "UTF-8");
+        }
+        CopyMojo mojo = new CopyMojo();
+        mojo.setShowfiles(true);
+        mojo.setThreads(4);
+
+        Resource resource = new Resource();
+        resource.setId("testCopyParallel");
+        resource.addInclude("parallel1/**/*.txt");
+        resource.setDirectory(currentLoc);
+        resource.addPath(Replace.asReplace("parallel1", "parallel2"));
+        resource.addReplace(Replace.asReplace("to be modified", "has been modified"));
+        mojo.setResources(new Resource[] { resource });
+
+        mojo.execute();
+
+        File destDir = new File(currentLoc, "parallel2");
+        for (int i = 0; i < 200; i++) {
+            File file = new File(destDir, "dir" + i % 10 + "/file" + i + ".txt");
+            Assert.assertEquals("content " + i + " has been modified", FileUtils.readFileToString(file, "UTF-8"));
+        }
+        FileUtils.deleteDirectory(srcDir);
+        FileUtils.deleteDirectory(destDir);
+    }
+
+    @Test
+    public void testCopyChained() throws MojoExecutionException, MojoFailureException, IOException {
+        File dir = new File(currentLoc, "chained1");
+        String[] names = { "a", "b", "c", "d", "e", "f" };
+        for (int threads : new int[] { 1, 4 }) {
+            // Each x.txt goes to xx.txt, which already exists and goes to xxx.txt, whatever order they are found in
+            for (String name : names) {
+                FileUtils.writeStringToFile(new File(dir, name + ".txt"), name, "UTF-8");
+                FileUtils.writeStringToFile(new File(dir, name + name + ".txt"), name + name, "UTF-8");
+            }
+            CopyMojo mojo = new CopyMojo();
+            mojo.setShowfiles(true);
+            mojo.setThreads(threads);
+            mojo.setReportFile(new File(dir, "report.csv"));
+
+            Resource resource = new Resource();
+            resource.setId("testCopyChained");
+            resource.addInclude("**/*.txt");
+            resource.setDirectory(dir.getAbsolutePath());
+            resource.setReplaceExisting(true);
+            resource.setNormalizePath(false);
+            resource.addPath(Replace.asRegex("/([a-f])(\\1*)\\.txt$", "/$1$1$2.txt"));
+            mojo.setResources(new Resource[] { resource });
+            mojo.execute();
+
+            for (String name : names) {
+                Assert.assertTrue(new File(dir, name + name + name + ".txt").isFile());
+                Assert.assertFalse(new File(dir, name + name + name + name + ".txt").exists());
+            }
+            String[] columns = FileUtils.readFileToString(new File(dir, "report.csv"), "UTF-8").split("\n")[1]
+                    .split(",");
+            Assert.assertEquals("12", columns[1]);
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    @Test
+    public void testCopyTransferStrategies() throws MojoExecutionException, MojoFailureException, IOException {
+        for (TransferStrategy strategy : TransferStrategy.values()) {
+            CopyMojo mojo = new CopyMojo();
+            mojo.setShowfiles(true);
+
+            Resource resource = new Resource();
+            resource.setId("testCopyTransferStrategies");
+            resource.setTransferStrategy(strategy);
+            resource.addInclude("folder1/**/*.txt");
+            resource.setDirectory(currentLoc);
+            resource.addPath(Replace.asReplace("folder1", "transfer1"));
+            mojo.setResources(new Resource[] { resource });
+
+            mojo.execute();
+
+            File srcFile = new File(currentLoc + "/folder1/folder2/test1.txt");
+            File file = new File(currentLoc + "/transfer1/folder2/test1.txt");
+            Assert.assertEquals(strategy.name(), FileUtils.readFileToString(srcFile, "UTF-8"),
+                    FileUtils.readFileToString(file, "UTF-8"));
+            if (strategy == TransferStrategy.SYMLINK) {
+                Assert.assertTrue(Files.isSymbolicLink(file.toPath()));
+            }
+            FileUtils.deleteDirectory(new File(currentLoc, "transfer1"));
+        }
+    }
+
+    @Test
+    public void testDelta() throws MojoExecutionException, MojoFailureException, IOException {
+        File dir = new File(currentLoc, "delta1");
+        File srcFile = new File(dir, "src/big.txt");
+        File json = new File(dir, "report.json");
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; content.length() < 300000; i++) {
+            content.append("line ").append(i).append(" to be modified\n");
+        }
+        for (boolean streaming : new boolean[] { false, true }) {
+            for (boolean replace : new boolean[] { false, true }) {
+                FileUtils.write(srcFile, content, "UTF-8");
+                CopyMojo mojo = new CopyMojo();
+                mojo.setReportFile(json);
+
+                Resource resource = new Resource();
+                resource.setId("testDelta");
+                resource.addInclude("src/**");
+                resource.setDirectory(dir.getAbsolutePath());
+                resource.setReplaceExisting(true);
+                resource.setStreaming(streaming);
+                resource.setDeltaThreshold(1);
+                resource.addPath(Replace.asReplace("src", "dest"));
+                if (replace) {
+                    resource.addReplace(Replace.asReplace("to be modified", "has been modified"));
+                }
+                mojo.setResources(new Resource[] { resource });
+                mojo.execute();
+
+                // A change of one byte writes one block
+                String changed = content.toString().replace("line 5000 ", "line 5OOO ");
+                FileUtils.write(srcFile, changed, "UTF-8");
+                mojo.execute();
+                File destFile = new File(dir, "dest/big.txt");
+                String expected = replace ? changed.replace("to be modified", "has been modified") : changed;
+                Assert.assertEquals(expected, FileUtils.readFileToString(destFile, "UTF-8"));
+                Assert.assertTrue(FileUtils.readFileToString(json, "UTF-8").contains("\"bytesWritten\": 65536,"));
+
+                // A shorter source cuts the destination
+                FileUtils.write(srcFile, changed.substring(0, 1000), "UTF-8");
+                mojo.execute();
+                expected = changed.substring(0, 1000);
+                Assert.assertEquals(replace ? expected.replace("to be modified", "has been modified") : expected,
+                        FileUtils.readFileToString(destFile, "UTF-8"));
+                FileUtils.deleteDirectory(dir);
+            }
+        }
+    }
+
+    @Test
+    public void testDeltaHardLinked() throws MojoExecutionException, MojoFailureException, IOException {
+        File dir = new File(currentLoc, "delta2");
+        File srcFile = new File(dir, "src/big.txt");
+        File destFile = new File(dir, "dest/big.txt");
+        File shared = new File(dir, "shared.txt");
+        FileUtils.write(srcFile, "new content", "UTF-8");
+        FileUtils.write(shared, "old content", "UTF-8");
+        destFile.getParentFile().mkdirs();
+        Files.createLink(destFile.toPath(), shared.toPath());
+
+        CopyMojo mojo = new CopyMojo();
+        Resource resource = new Resource();
+        resource.setId("testDeltaHardLinked");
+        resource.addInclude("src/**");
+        resource.setDirectory(dir.getAbsolutePath());
+        resource.setReplaceExisting(true);
+        resource.setDeltaThreshold(1);
+        resource.addPath(Replace.asReplace("src", "dest"));
+        mojo.setResources(new Resource[] { resource });
+        mojo.execute();
+
+        // The destination is replaced, the file it was linked to is left alone
+        Assert.assertEquals("new content", FileUtils.readFileToString(destFile, "UTF-8"));
+        Assert.assertEquals("old content", FileUtils.readFileToString(shared, "UTF-8"));
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void testIncremental() throws MojoExecutionException, MojoFailureException, IOException {
+        File srcFile = new File(currentLoc, "incremental1/test.txt");
+        FileUtils.writeStringToFile(srcFile, "some content to be modified", "UTF-8");
+        File manifestFile = new File(currentLoc, "incremental.manifest");
+        File destFile = new File(currentLoc, "incremental2/test.txt");
+
+        Resource resource = new Resource();
+        resource.setId("testIncremental");
+        resource.setReplaceExisting(true);
+        resource.addInclude("incremental1/**");
+        resource.setDirectory(currentLoc);
+        resource.addPath(Replace.asReplace("incremental1", "incremental2"));
+        resource.addReplace(Replace.asReplace("to be modified", "has been modified"));
+
+        CopyMojo mojo = new CopyMojo();
+        mojo.setShowfiles(true);
+        mojo.setIncremental(true);
+        mojo.setManifestFile(manifestFile);
+        mojo.setResources(new Resource[] { resource });
+        mojo.execute();
+        Assert.assertEquals("some content has been modified", FileUtils.readFileToString(destFile, "UTF-8"));
+
+        // Unchanged, the destination is left alone
+        FileUtils.writeStringToFile(destFile, "untouched", "UTF-8");
+        mojo.execute();
+        Assert.assertEquals("untouched", FileUtils.readFileToString(destFile, "UTF-8"));
+
+        // Another configuration copies again
+        resource.addReplace(Replace.asReplace("content", "text"));
+        mojo.execute();
+        Assert.assertEquals("some text has been modified", FileUtils.readFileToString(destFile, "UTF-8"));
+
+        // A deleted destination is copied again
+        destFile.delete();
+        mojo.execute();
+        Assert.assertEquals("some text has been modified", FileUtils.readFileToString(destFile, "UTF-8"));
+
+        FileUtils.deleteDirectory(srcFile.getParentFile());
+        FileUtils.deleteDirectory(destFile.getParentFile());
+        manifestFile.delete();
+    }
+
+    @Test
+    public void testMapped() throws MojoExecutionException, MojoFailureException, IOException {
+        File srcDir = new File(currentLoc, "mapped1");
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            content.append("line ").append(i).append(" to be modified\n");
+        }
+        FileUtils.writeStringToFile(new File(srcDir, "large.txt"), content.toString(), "UTF-8");
+        FileUtils.writeStringToFile(new File(srcDir, "plain.txt"), content.toString(), "UTF-8");
+
+        CopyMojo mojo = new CopyMojo();
+        mojo.setShowfiles(true);
+
+        Resource replaced = new Resource();
+        replaced.setId("testMapped");
+        replaced.setMmapThreshold(1);
+        replaced.addInclude("mapped1/large.txt");
+        replaced.setDirectory(currentLoc);
+        replaced.addPath(Replace.asReplace("mapped1", "mapped2"));
+        replaced.addReplace(Replace.asReplace("to be modified", "has been modified"));
+        Resource copied = new Resource();
+        copied.setId("testMapped");
+        copied.setMmapThreshold(1);
+        copied.addInclude("mapped1/plain.txt");
+        copied.setDirectory(currentLoc);
+        copied.addPath(Replace.asReplace("mapped1", "mapped2"));
+        mojo.setResources(new Resource[] { replaced, copied });
+
+        mojo.execute();
+
+        File destDir = new File(currentLoc, "mapped2");
+        Assert.assertEquals(content.toString().replace("to be modified", "has been modified"),
+                FileUtils.readFileToString(new File(destDir, "large.txt"), "UTF-8"));
+        Assert.assertEquals(content.toString(), FileUtils.readFileToString(new File(destDir, "plain.txt"), "UTF-8"));
+        FileUtils.deleteDirectory(srcDir);
+        FileUtils.deleteDirectory(destDir);
+    }
+
     @Test
     public void testMove() throws MojoExecutionException, MojoFailureException {
         copy();
@@ -169,6 +575,45 @@ public class CopyMojoTest {
         file.delete();
     }
 
+    @Test
+    public void testMoveDirectories() throws MojoExecutionException, MojoFailureException, IOException {
+        File srcDir = new File(currentLoc, "movedir1");
+        for (int i = 0; i < 20; i++) {
+            FileUtils.writeStringToFile(new File(srcDir, "all/dir" + i % 4 + "/file" + i + ".txt"), "content " + i,
+                    "UTF-8");
+            FileUtils.writeStringToFile(new File(srcDir, "some/dir" + i % 4 + "/file" + i + ".txt"), "content " + i,
+                    "UTF-8");
+        }
+        FileUtils.writeStringToFile(new File(srcDir, "some/dir0/file.bak"), "excluded", "UTF-8");
+
+        CopyMojo mojo = new CopyMojo();
+        mojo.setShowfiles(true);
+
+        Resource resource = new Resource();
+        resource.setId("testMoveDirectories");
+        resource.setMove(true);
+        resource.addInclude("movedir1/**/*.txt");
+        resource.setDirectory(currentLoc);
+        resource.addPath(Replace.asReplace("movedir1", "movedir2"));
+        mojo.setResources(new Resource[] { resource });
+
+        mojo.execute();
+
+        File destDir = new File(currentLoc, "movedir2");
+        for (int i = 0; i < 20; i++) {
+            Assert.assertEquals("content " + i, FileUtils.readFileToString(new File(destDir, "all/dir" + i % 4
+                    + "/file" + i + ".txt"), "UTF-8"));
+            Assert.assertEquals("content " + i, FileUtils.readFileToString(new File(destDir, "some/dir" + i % 4
+                    + "/file" + i + ".txt"), "UTF-8"));
+        }
+        Assert.assertFalse(new File(srcDir, "all").exists());
+        Assert.assertTrue(new File(srcDir, "some/dir0/file.bak").exists());
+        Assert.assertFalse(new File(destDir, "some/dir0/file.bak").exists());
+        Assert.assertFalse(new File(srcDir, "some/dir1").exists());
+        FileUtils.deleteDirectory(srcDir);
+        FileUtils.deleteDirectory(destDir);
+    }
+
     @Test
     public void testNothingToDo() throws MojoExecutionException, MojoFailureException {
         CopyMojo mojo = new CopyMojo();
@@ -185,6 +630,236 @@ public class CopyMojoTest {
         Assert.assertTrue(new File(currentLoc + "/folder1/folder2/test1.txt").exists());
     }
 
+    @Test
+    public void testOutputCache() throws MojoExecutionException, MojoFailureException, IOException {
+        File dir = new File(currentLoc, "output1");
+        // Fresh, so no entry is left from an earlier run
+        File cacheDir = Files.createTempDirectory("copy-plugin-cache").toFile();
+        File csv = new File(dir, "report.csv");
+        FileUtils.write(new File(dir, "src/a/file1.txt"), "content to be modified", "UTF-8");
+        FileUtils.write(new File(dir, "src/b/file2.txt"), "other content to be modified", "UTF-8");
+        File destFile = new File(dir, "dest/a/file1.txt");
+
+        String[] expected = { "0,2", "2,0", "2,0", "0,2" };
+        for (int run = 0; run < expected.length; run++) {
+            // Like a clean workspace
+            FileUtils.deleteDirectory(new File(dir, "dest"));
+            CopyMojo mojo = new CopyMojo();
+            mojo.setShowfiles(true);
+            mojo.setReportFile(csv);
+            mojo.setOutputCache(cacheDir);
+
+            Resource resource = new Resource();
+            resource.setId("testOutputCache");
+            resource.addInclude("src/**/*.txt");
+            resource.setDirectory(dir.getAbsolutePath());
+            resource.setTransferStrategy(run == 2 ? TransferStrategy.HARDLINK : TransferStrategy.COPY);
+            resource.addPath(Replace.asReplace("src", "dest"));
+            resource.addReplace(Replace.asReplace("to be modified", run == 3 ? "was modified" : "has been modified"));
+            mojo.setResources(new Resource[] { resource });
+            mojo.execute();
+
+            Assert.assertEquals(run == 3 ? "content was modified" : "content has been modified",
+                    FileUtils.readFileToString(destFile, "UTF-8"));
+            String[] columns = FileUtils.readFileToString(csv, "UTF-8").split("\n")[1].split(",");
+            Assert.assertEquals(expected[run], columns[7] + "," + columns[8]);
+
+            if (run == 2) {
+                // Using the entry linked to the destination leaves the time of the destination alone
+                Assert.assertTrue(destFile.setLastModified(1000000000000L));
+                resource.setReplaceExisting(true);
+                mojo.execute();
+                Assert.assertEquals(1000000000000L, destFile.lastModified());
+            }
+        }
+        // Every entry with its marker
+        Assert.assertEquals(8, FileUtils.listFiles(cacheDir, null, true).size());
+
+        CopyMojo mojo = new CopyMojo();
+        mojo.setOutputCache(cacheDir);
+        mojo.setOutputCacheSize(0);
+        Resource resource = new Resource();
+        resource.addInclude("src/**/*.txt");
+        resource.setDirectory(dir.getAbsolutePath());
+        mojo.setResources(new Resource[] { resource });
+        mojo.execute();
+        Assert.assertTrue(FileUtils.listFiles(cacheDir, null, true).isEmpty());
+        FileUtils.deleteDirectory(cacheDir);
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void testPlan() throws MojoExecutionException, MojoFailureException, IOException {
+        File srcDir = new File(currentLoc, "plan1");
+        for (int i = 0; i < 10; i++) {
+            FileUtils.writeStringToFile(new File(srcDir, "file" + i + ".txt"), "content " + i + " to be modified",
+                    "UTF-8");
+        }
+        File destDir = new File(currentLoc, "plan2");
+        FileUtils.writeStringToFile(new File(destDir, "file0.txt"), "existing", "UTF-8");
+        File planFile = new File(currentLoc, "plan/copy.plan");
+
+        Resource resource = new Resource();
+        resource.setId("testPlan");
+        resource.addInclude("plan1/**/*.txt");
+        resource.setDirectory(currentLoc);
+        resource.setReplaceExisting(true);
+        resource.addPath(Replace.asReplace("plan1", "plan2"));
+        resource.addReplace(Replace.asReplace("to be modified", "has been modified"));
+
+        CopyMojo mojo = new PlanMojo();
+        mojo.setShowfiles(true);
+        mojo.setPlanFile(planFile);
+        mojo.setResources(new Resource[] { resource });
+        mojo.execute();
+
+        Assert.assertEquals(1, destDir.list().length);
+        String plan = FileUtils.readFileToString(planFile, "UTF-8");
+        Assert.assertEquals(10, plan.split("\ncp\t").length - 1);
+        Assert.assertTrue(plan.contains("cp\t24\treplace\t" + new File(srcDir, "file0.txt").getAbsolutePath()
+                + "\t" + new File(destDir, "file0.txt").getAbsolutePath() + "\n"));
+
+        // Files added after planning are not part of the plan
+        FileUtils.writeStringToFile(new File(srcDir, "added.txt"), "added", "UTF-8");
+        mojo = new CopyMojo();
+        mojo.setPlanFile(planFile);
+        mojo.setUsePlan(true);
+        mojo.setResources(new Resource[] { resource });
+        mojo.execute();
+
+        Assert.assertEquals(10, destDir.list().length);
+        Assert.assertEquals("content 3 has been modified",
+                FileUtils.readFileToString(new File(destDir, "file3.txt"), "UTF-8"));
+        FileUtils.deleteDirectory(srcDir);
+        FileUtils.deleteDirectory(destDir);
+        FileUtils.deleteDirectory(planFile.getParentFile());
+    }
+
+    @Test
+    public void testPreflight() throws MojoFailureException, IOException {
+        File srcDir = new File(currentLoc, "preflight1");
+        for (int i = 0; i < 10; i++) {
+            FileUtils.writeStringToFile(new File(srcDir, "file" + i + ".txt"), "content " + i, "UTF-8");
+        }
+        File destDir = new File(currentLoc, "preflight2");
+        FileUtils.writeStringToFile(new File(destDir, "file9.txt"), "existing", "UTF-8");
+
+        CopyMojo mojo = new CopyMojo();
+        mojo.setPreflight(true);
+
+        Resource resource = new Resource();
+        resource.setId("testPreflight");
+        resource.addInclude("preflight1/**/*.txt");
+        resource.setDirectory(currentLoc);
+        resource.setMove(true);
+        resource.addPath(Replace.asReplace("preflight1", "preflight2"));
+        // file0.txt to file2.txt all end up as file0.txt
+        resource.addPath(Replace.asRegex("file[0-2]", "file0"));
+        mojo.setResources(new Resource[] { resource });
+
+        try {
+            mojo.execute();
+            Assert.fail("Conflicts not found");
+        } catch (MojoExecutionException ex) {
+            Assert.assertTrue(ex.getMessage().startsWith("3 conflicts"));
+        }
+        Assert.assertEquals(10, srcDir.list().length);
+        Assert.assertEquals(1, destDir.list().length);
+        FileUtils.deleteDirectory(srcDir);
+        FileUtils.deleteDirectory(destDir);
+    }
+
+    @Test
+    public void testPreflightInPlace() throws MojoFailureException, IOException {
+        File srcFile = new File(currentLoc, "preflightInPlace/test.txt");
+        FileUtils.writeStringToFile(srcFile, "some content to be modified", "UTF-8");
+
+        CopyMojo mojo = new CopyMojo();
+        mojo.setPreflight(true);
+
+        Resource resource = new Resource();
+        resource.setId("testPreflightInPlace");
+        resource.addInclude("preflightInPlace/**");
+        resource.setDirectory(currentLoc);
+        resource.addReplace(Replace.asReplace("to be modified", "has been modified"));
+        mojo.setResources(new Resource[] { resource });
+
+        // Replacing a file in place replaces an existing file
+        try {
+            mojo.execute();
+            Assert.fail("Conflict not found");
+        } catch (MojoExecutionException ex) {
+            Assert.assertTrue(ex.getMessage().startsWith("1 conflicts"));
+        }
+        Assert.assertEquals("some content to be modified", FileUtils.readFileToString(srcFile, "UTF-8"));
+        FileUtils.deleteDirectory(srcFile.getParentFile());
+    }
+
+    @Test
+    public void testPreflightUnchanged() throws MojoExecutionException, MojoFailureException, IOException {
+        File dir = new File(currentLoc, "preflightUnchanged");
+        FileUtils.writeStringToFile(new File(dir, "src/test.txt"), "some content to be modified", "UTF-8");
+
+        CopyMojo mojo = new CopyMojo();
+        mojo.setPreflight(true);
+        mojo.setIncremental(true);
+        mojo.setManifestFile(new File(dir, "incremental.manifest"));
+
+        Resource incremental = new Resource();
+        incremental.setId("testPreflightIncremental");
+        incremental.addInclude("src/**");
+        incremental.setDirectory(dir.getAbsolutePath());
+        incremental.addPath(Replace.asReplace("src", "replaced"));
+        incremental.addReplace(Replace.asReplace("to be modified", "has been modified"));
+
+        Resource sync = new Resource();
+        sync.setId("testPreflightSync");
+        sync.addInclude("src/**");
+        sync.setDirectory(dir.getAbsolutePath());
+        sync.setSyncDirectory(new File(dir, "deploy").getAbsolutePath());
+        sync.addPath(Replace.asReplace("src", "deploy"));
+        mojo.setResources(new Resource[] { incremental, sync });
+        mojo.execute();
+
+        // The destinations exist but the run leaves them alone
+        mojo.execute();
+        Assert.assertEquals("some content has been modified", FileUtils.readFileToString(new File(dir,
+                "replaced/test.txt"), "UTF-8"));
+        Assert.assertEquals("some content to be modified", FileUtils.readFileToString(new File(dir,
+                "deploy/test.txt"), "UTF-8"));
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void testPrefilter() throws MojoExecutionException, MojoFailureException, IOException {
+        File srcDir = new File(currentLoc, "prefilter1");
+        FileUtils.writeStringToFile(new File(srcDir, "hit.txt"), "some content to be modified", "UTF-8");
+        FileUtils.writeStringToFile(new File(srcDir, "miss.txt"), "nothing to replace", "UTF-8");
+
+        CopyMojo mojo = new CopyMojo();
+        mojo.setShowfiles(true);
+
+        Resource resource = new Resource();
+        resource.setId("testPrefilter");
+        resource.setTransferStrategy(TransferStrategy.SYMLINK);
+        resource.addInclude("prefilter1/**");
+        resource.setDirectory(currentLoc);
+        resource.addPath(Replace.asReplace("prefilter1", "prefilter2"));
+        resource.addReplace(Replace.asRegex("to be m([^d]+)d", "has been m$1d"));
+        resource.addReplace(Replace.asReplace("content", "text"));
+        mojo.setResources(new Resource[] { resource });
+
+        mojo.execute();
+
+        File destDir = new File(currentLoc, "prefilter2");
+        Assert.assertEquals("some text has been modified", FileUtils.readFileToString(new File(destDir, "hit.txt"),
+                "UTF-8"));
+        Assert.assertFalse(Files.isSymbolicLink(new File(destDir, "hit.txt").toPath()));
+        Assert.assertTrue(Files.isSymbolicLink(new File(destDir, "miss.txt").toPath()));
+        FileUtils.deleteDirectory(srcDir);
+        FileUtils.deleteDirectory(destDir);
+    }
+
     @Test
     public void testReplaceExisting() throws MojoExecutionException, MojoFailureException {
         copy();
@@ -268,6 +943,49 @@ public class CopyMojoTest {
         }
     }
 
+    @Test
+    public void testReport() throws MojoExecutionException, MojoFailureException, IOException {
+        File srcDir = new File(currentLoc, "report1");
+        for (int i = 0; i < 20; i++) {
+            FileUtils.writeStringToFile(new File(srcDir, "file" + i + ".txt"), "content " + i + " to be modified",
+                    "UTF-8");
+        }
+        File json = new File(currentLoc, "report/report.json");
+        File csv = new File(currentLoc, "report/report.csv");
+        for (File reportFile : new File[] { json, csv }) {
+            CopyMojo mojo = new CopyMojo();
+            mojo.setReportFile(reportFile);
+            mojo.setReportSlowest(3);
+
+            Resource resource = new Resource();
+            resource.setId("testReport");
+            resource.addInclude("report1/**/*.txt");
+            resource.setDirectory(currentLoc);
+            resource.setReplaceExisting(true);
+            resource.addPath(Replace.asReplace("report1", "report2"));
+            resource.addReplace(Replace.asReplace("to be modified", "has been modified"));
+            mojo.setResources(new Resource[] { resource });
+
+            mojo.execute();
+        }
+
+        String report = FileUtils.readFileToString(json, "UTF-8");
+        Assert.assertTrue(report.contains("\"resource\": \"testReport\""));
+        Assert.assertTrue(report.contains("\"matched\": 20,"));
+        Assert.assertTrue(report.contains("\"copied\": 20,"));
+        Assert.assertTrue(report.contains("\"rewritten\": 20,"));
+        Assert.assertTrue(report.contains("\"bytesRead\": 490,"));
+        Assert.assertEquals(3, report.split("\"path\"").length - 1);
+        String[] lines = FileUtils.readFileToString(csv, "UTF-8").split("\n");
+        Assert.assertEquals(2, lines.length);
+        Assert.assertTrue(lines[0].startsWith("resource,matched,copied,moved,rewritten,skipped,deleted,cacheHits,"
+                + "cacheMisses,untouched,"));
+        Assert.assertTrue(lines[1].startsWith("testReport,20,20,0,20,0,0,0,0,0,490,550,"));
+        FileUtils.deleteDirectory(srcDir);
+        FileUtils.deleteDirectory(new File(currentLoc, "report2"));
+        FileUtils.deleteDirectory(json.getParentFile());
+    }
+
     @Test
     public void testSafeWorkingDir() throws MojoExecutionException, MojoFailureException {
         File file = null;
@@ -291,6 +1009,126 @@ public class CopyMojoTest {
         }
     }
 
+    @Test
+    public void testSessionCache() throws MojoExecutionException, MojoFailureException, IOException {
+        File dir = new File(currentLoc, "session1");
+        File file1 = new File(dir, "src/a/file1.txt");
+        FileUtils.write(file1, "content to be modified", "UTF-8");
+        FileUtils.write(new File(dir, "src/b/file2.txt"), "other content to be modified", "UTF-8");
+
+        // Two modules copying the same tree
+        CopyMojo[] mojos = new CopyMojo[2];
+        for (int i = 0; i < mojos.length; i++) {
+            mojos[i] = new CopyMojo();
+            mojos[i].setSessionCacheSize(1024 * 1024);
+            Resource resource = new Resource();
+            resource.setId("testSessionCache" + i);
+            resource.addInclude("src/**/*.txt");
+            resource.setDirectory(dir.getAbsolutePath());
+            resource.setReplaceExisting(true);
+            resource.addPath(Replace.asReplace("src", "module" + i));
+            resource.addReplace(Replace.asReplace("to be modified", "has been modified"));
+            mojos[i].setResources(new Resource[] { resource });
+        }
+        for (CopyMojo mojo : mojos) {
+            mojo.execute();
+        }
+        for (int i = 0; i < mojos.length; i++) {
+            Assert.assertEquals("content has been modified",
+                    FileUtils.readFileToString(new File(dir, "module" + i + "/a/file1.txt"), "UTF-8"));
+            Assert.assertEquals("other content has been modified",
+                    FileUtils.readFileToString(new File(dir, "module" + i + "/b/file2.txt"), "UTF-8"));
+        }
+
+        // Changed files and directories are not taken from the cache
+        FileUtils.write(file1, "changed content to be modified", "UTF-8");
+        Assert.assertTrue(file1.setLastModified(1000000000000L));
+        FileUtils.write(new File(dir, "src/a/file3.txt"), "new content to be modified", "UTF-8");
+        mojos[1].execute();
+        Assert.assertEquals("changed content has been modified",
+                FileUtils.readFileToString(new File(dir, "module1/a/file1.txt"), "UTF-8"));
+        Assert.assertEquals("new content has been modified",
+                FileUtils.readFileToString(new File(dir, "module1/a/file3.txt"), "UTF-8"));
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void testSkipUnchanged() throws MojoExecutionException, MojoFailureException, IOException {
+        for (boolean streaming : new boolean[] { false, true }) {
+            CopyMojo mojo = new CopyMojo();
+            mojo.setShowfiles(true);
+
+            Resource resource = new Resource();
+            resource.setId("testSkipUnchanged");
+            resource.setStreaming(streaming);
+            resource.setReplaceExisting(true);
+            resource.setSkipUnchanged(true);
+            resource.addInclude("folder1/**/*.txt");
+            resource.setDirectory(currentLoc);
+            resource.addPath(Replace.asReplace("folder1", "unchanged1"));
+            resource.addReplace(Replace.asReplace("to be modified", "has been modified"));
+            mojo.setResources(new Resource[] { resource });
+
+            mojo.execute();
+            File file = new File(currentLoc + "/unchanged1/folder2/test1.txt");
+            Assert.assertTrue(file.setLastModified(1000000000000L));
+
+            mojo.execute();
+            Assert.assertEquals(1000000000000L, file.lastModified());
+
+            resource.addReplace(Replace.asReplace("content", "text"));
+            mojo.execute();
+            Assert.assertNotEquals(1000000000000L, file.lastModified());
+            Assert.assertEquals("some text has been modified\n\nanother text has been modified",
+                    FileUtils.readFileToString(file, "UTF-8"));
+            FileUtils.deleteDirectory(new File(currentLoc, "unchanged1"));
+        }
+    }
+
+    @Test
+    public void testSync() throws MojoExecutionException, MojoFailureException, IOException {
+        File dir = new File(currentLoc, "sync1");
+        FileUtils.write(new File(dir, "src/a/file1.txt"), "content to be modified", "UTF-8");
+        FileUtils.write(new File(dir, "src/a/file2.bin"), "binary content", "UTF-8");
+        File stale = new File(dir, "deploy/a/old.txt");
+        FileUtils.write(stale, "stale", "UTF-8");
+
+        CopyMojo mojo = new CopyMojo();
+        mojo.setShowfiles(true);
+
+        Resource resource = new Resource();
+        resource.setId("testSync");
+        resource.addInclude("src/**");
+        resource.setDirectory(dir.getAbsolutePath());
+        resource.setSyncDirectory(new File(dir, "deploy").getAbsolutePath());
+        resource.addPath(Replace.asReplace("src", "deploy"));
+        resource.addReplace(Replace.asReplace("to be modified", "has been modified"));
+        resource.addBinaryInclude("**/*.bin");
+        mojo.setResources(new Resource[] { resource });
+
+        mojo.execute();
+        File copied = new File(dir, "deploy/a/file1.txt");
+        File binary = new File(dir, "deploy/a/file2.bin");
+        Assert.assertEquals("content has been modified", FileUtils.readFileToString(copied, "UTF-8"));
+        Assert.assertEquals("binary content", FileUtils.readFileToString(binary, "UTF-8"));
+        Assert.assertFalse(stale.exists());
+
+        // In sync files are left alone, changed ones replaced and the ones without source deleted
+        FileUtils.write(binary, "binary CONTENT", "UTF-8");
+        Assert.assertTrue(binary.setLastModified(new File(dir, "src/a/file2.bin").lastModified()));
+        Assert.assertTrue(new File(dir, "src/a/file1.txt").delete());
+        FileUtils.write(new File(dir, "src/b/file3.txt"), "new content", "UTF-8");
+        mojo.execute();
+        Assert.assertEquals("binary CONTENT", FileUtils.readFileToString(binary, "UTF-8"));
+        Assert.assertFalse(copied.exists());
+        Assert.assertEquals("new content", FileUtils.readFileToString(new File(dir, "deploy/b/file3.txt"), "UTF-8"));
+
+        resource.setSyncHash(true);
+        mojo.execute();
+        Assert.assertEquals("binary content", FileUtils.readFileToString(binary, "UTF-8"));
+        FileUtils.deleteDirectory(dir);
+    }
+
     @Test
     public void testUnsafeWorkingDir() throws MojoExecutionException, MojoFailureException {
         File file = null;
@@ -316,4 +1154,138 @@ public class CopyMojoTest {
             cleanup(file);
         }
     }
+
+    @Test
+    public void testWatch() throws IOException, InterruptedException {
+        final File dir = new File(currentLoc, "watch1");
+        FileUtils.write(new File(dir, "src/file1.txt"), "content to be modified", "UTF-8");
+
+        final WatchMojo mojo = new WatchMojo();
+        mojo.setShowfiles(true);
+        mojo.setWatchTimeout(1000);
+        final CountDownLatch watching = new CountDownLatch(1);
+        mojo.setLog(new SystemStreamLog() {
+            @Override
+            public void info(final CharSequence content) {
+                super.info(content);
+                if (content.toString().startsWith("Watching")) {
+                    watching.countDown();
+                }
+            }
+        });
+
+        Resource resource = new Resource();
+        resource.setId("testWatch");
+        resource.addInclude("src/**/*.txt");
+        resource.setDirectory(dir.getAbsolutePath());
+        resource.addPath(Replace.asReplace("src", "dest"));
+        resource.addReplace(Replace.asReplace("to be modified", "has been modified"));
+        resource.setReplaceExisting(true);
+        mojo.setResources(new Resource[] { resource });
+
+        final Exception[] error = new Exception[1];
+        Thread watcher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mojo.execute();
+                } catch (Exception ex) {
+                    error[0] = ex;
+                }
+            }
+        });
+        watcher.start();
+        // Changes before the directories are watched have no events
+        Assert.assertTrue(watching.await(10, TimeUnit.SECONDS));
+
+        File copied = new File(dir, "dest/file1.txt");
+        File created = new File(dir, "dest/sub/file2.txt");
+        FileUtils.write(new File(dir, "src/sub/file2.txt"), "other content to be modified", "UTF-8");
+        for (int i = 0; i < 100 && !created.isFile(); i++) {
+            Thread.sleep(100);
+        }
+        Assert.assertEquals("other content has been modified", FileUtils.readFileToString(created, "UTF-8"));
+        Assert.assertEquals("content has been modified", FileUtils.readFileToString(copied, "UTF-8"));
+
+        FileUtils.write(new File(dir, "src/file1.txt"), "edited content to be modified", "UTF-8");
+        Assert.assertTrue(new File(dir, "src/sub/file2.txt").delete());
+        for (int i = 0; i < 100 && created.exists(); i++) {
+            Thread.sleep(100);
+        }
+        Assert.assertFalse(created.exists());
+        Assert.assertEquals("edited content has been modified", FileUtils.readFileToString(copied, "UTF-8"));
+
+        watcher.join(10000);
+        Assert.assertFalse(watcher.isAlive());
+        Assert.assertNull(error[0]);
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void testWatchDeletedDirectory() throws IOException, InterruptedException {
+        final File dir = new File(currentLoc, "watch2");
+        FileUtils.write(new File(dir, "src/sub/file1.txt"), "content", "UTF-8");
+        FileUtils.write(new File(dir, "src/sub/deeper/file2.txt"), "content", "UTF-8");
+
+        final WatchMojo mojo = new WatchMojo();
+        mojo.setShowfiles(true);
+        mojo.setWatchTimeout(1000);
+        final CountDownLatch watching = new CountDownLatch(1);
+        mojo.setLog(new SystemStreamLog() {
+            @Override
+            public void info(final CharSequence content) {
+                super.info(content);
+                if (content.toString().startsWith("Watching")) {
+                    watching.countDown();
+                }
+            }
+        });
+
+        Resource resource = new Resource();
+        resource.setId("testWatchDeletedDirectory");
+        resource.addInclude("src/**/*.txt");
+        resource.setDirectory(dir.getAbsolutePath());
+        resource.addPath(Replace.asReplace("src", "dest"));
+        resource.setReplaceExisting(true);
+        mojo.setResources(new Resource[] { resource });
+
+        final Exception[] error = new Exception[1];
+        Thread watcher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mojo.execute();
+                } catch (Exception ex) {
+                    error[0] = ex;
+                }
+            }
+        });
+        watcher.start();
+        // Changes before the directories are watched have no events
+        Assert.assertTrue(watching.await(10, TimeUnit.SECONDS));
+
+        File copied = new File(dir, "dest/sub/file1.txt");
+        File deeper = new File(dir, "dest/sub/deeper/file2.txt");
+        File marker = new File(dir, "dest/marker.txt");
+        FileUtils.write(new File(dir, "src/marker.txt"), "marker", "UTF-8");
+        for (int i = 0; i < 100 && !marker.isFile(); i++) {
+            Thread.sleep(100);
+        }
+        Assert.assertTrue(copied.isFile());
+        Assert.assertTrue(deeper.isFile());
+
+        // Moved away, only the directory has an event
+        Files.move(new File(dir, "src/sub").toPath(), new File(dir, "moved").toPath());
+        for (int i = 0; i < 100 && (copied.exists() || deeper.exists()); i++) {
+            Thread.sleep(100);
+        }
+        Assert.assertFalse(copied.exists());
+        Assert.assertFalse(deeper.exists());
+        Assert.assertTrue(marker.isFile());
+
+        watcher.join(10000);
+        Assert.assertFalse(watcher.isAlive());
+        Assert.assertNull(error[0]);
+        FileUtils.deleteDirectory(dir);
+    }
 }
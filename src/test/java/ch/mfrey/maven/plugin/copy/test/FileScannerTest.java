@@ -0,0 +1,73 @@
+package ch.mfrey.maven.plugin.copy.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ch.mfrey.maven.plugin.copy.FileScanner;
+
+public class FileScannerTest {
+
+    private static final File root = new File(new File(FileScannerTest.class.getResource("/").getFile()),
+            "scanner1");
+
+    @AfterClass
+    public static void cleanup() throws IOException {
+        FileUtils.deleteDirectory(root);
+    }
+
+    @BeforeClass
+    public static void setup() throws IOException {
+        for (String path : new String[] { "a.txt", "b.java", "src/a.txt", "src/main/b.java", "src/main/c.txt",
+                "node_modules/x/a.txt", "web/node_modules/y/b.txt", "web/index.html", "target/classes/a.txt",
+                "target/a.txt", ".git/config" }) {
+            FileUtils.writeStringToFile(new File(root, path), path, "UTF-8");
+        }
+    }
+
+    private void assertSameFiles(final List<String> includes, final List<String> excludes) throws IOException {
+        Set<String> expected = new TreeSet<String>();
+        for (Object file : org.codehaus.plexus.util.FileUtils.getFiles(root,
+                includes.isEmpty() ? null : String.join(",", includes),
+                excludes.isEmpty() ? null : String.join(",", excludes))) {
+            expected.add(((File) file).getAbsolutePath());
+        }
+        final Set<String> actual = new TreeSet<String>();
+        new FileScanner(includes, excludes).scan(root.toPath(), new FileScanner.Listener() {
+            @Override
+            public void fileFound(final Path file, final String relativePath, final BasicFileAttributes attributes) {
+                actual.add(file.toFile().getAbsolutePath());
+            }
+        });
+        Assert.assertEquals(includes + " " + excludes, expected, actual);
+    }
+
+    @Test
+    public void testSameAsPlexus() throws IOException {
+        List<List<String>> patterns = Arrays.asList(Collections.<String> emptyList(), Arrays.asList("**"),
+                Arrays.asList("*.txt"), Arrays.asList("**/*.txt"), Arrays.asList("src/**"), Arrays.asList("src/"),
+                Arrays.asList("**/node_modules/**"), Arrays.asList("target/**, **/*.java"), Arrays.asList("src/*"),
+                Arrays.asList("**/main/*.?ava"), Arrays.asList("/src/**"), Arrays.asList("%regex[.*\\.html]"),
+                Arrays.asList("%ant[src/**/*.txt]"), Arrays.asList("target", "src/main"), Arrays.asList("**/a.txt"));
+        for (List<String> include : patterns) {
+            for (List<String> exclude : patterns) {
+                if (!include.isEmpty()) {
+                    assertSameFiles(include, exclude);
+                }
+            }
+        }
+        assertSameFiles(Collections.<String> emptyList(), Arrays.asList("**/node_modules/**"));
+    }
+}
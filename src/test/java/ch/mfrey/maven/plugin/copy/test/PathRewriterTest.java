@@ -0,0 +1,46 @@
+package ch.mfrey.maven.plugin.copy.test;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import ch.mfrey.maven.plugin.copy.PathRewriter;
+import ch.mfrey.maven.plugin.copy.Replace;
+
+public class PathRewriterTest {
+
+    private PathRewriter rewriter(final Replace... paths) {
+        return new PathRewriter(Arrays.asList(paths), false);
+    }
+
+    @Test
+    public void testSplitRewriteEqualsWholePath() {
+        PathRewriter rewriter = rewriter(Replace.asReplace("old", "new"), Replace.asRegex("v([0-9]+)", "version$1"),
+                Replace.asRegex("\\.bak", ""), Replace.asReplace("new", "x/y"));
+        Assert.assertTrue(rewriter.isSplittable());
+        String[] paths = { "/old/v1/file.txt.bak", "/a/old-v22/oldv3.bak", "/new/new", "/old.bak/bak" };
+        for (String path : paths) {
+            int separator = path.lastIndexOf('/');
+            Assert.assertEquals(rewriter.rewrite(path), rewriter.rewrite(path.substring(0, separator)) + "/"
+                    + rewriter.rewrite(path.substring(separator + 1)));
+        }
+    }
+
+    @Test
+    public void testSplittable() {
+        Assert.assertTrue(rewriter().isSplittable());
+        Assert.assertTrue(rewriter(Replace.asRegex("[a-z_-]+\\.(?:xml|txt)", "$0")).isSplittable());
+        Assert.assertFalse(rewriter(Replace.asReplace("dir/", "other/")).isSplittable());
+        Assert.assertFalse(rewriter(Replace.asReplace("", "x")).isSplittable());
+        Assert.assertFalse(rewriter(Replace.asRegex("a/b", "c")).isSplittable());
+        Assert.assertFalse(rewriter(Replace.asRegex("\\.txt$", ".xml")).isSplittable());
+        Assert.assertFalse(rewriter(Replace.asRegex("a.b", "c")).isSplittable());
+        Assert.assertFalse(rewriter(Replace.asRegex("[^a]b", "c")).isSplittable());
+        Assert.assertFalse(rewriter(Replace.asRegex("[!-~]", "c")).isSplittable());
+        Assert.assertFalse(rewriter(Replace.asRegex("[\\t-~]", "c")).isSplittable());
+        Assert.assertFalse(rewriter(Replace.asRegex("(?<=a)b", "c")).isSplittable());
+        Assert.assertFalse(rewriter(Replace.asRegex("\\bb", "c")).isSplittable());
+        Assert.assertFalse(rewriter(Replace.asRegex("x*", "y")).isSplittable());
+    }
+}